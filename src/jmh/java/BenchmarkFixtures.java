@@ -0,0 +1,171 @@
+import java.util.*;
+import java.util.function.IntFunction;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.Supplier;
+
+import jade.core.AID;
+import jade.lang.acl.ACLMessage;
+
+// JMH only runs benchmarks from named packages, which cannot import the default package,
+// so benchmarks look these fixtures up once per trial and call them through JDK interfaces
+public class BenchmarkFixtures {
+
+    private static final int ORACLE_MAX_NODES = 4096;
+
+    public static Supplier<Object> generate(int mapSize, int districts) {
+        return () -> MapModel.generate(mapSize, 4, districts);
+    }
+
+    public static IntToDoubleFunction distance(int mapSize, int districts, String engine, int pairs) {
+        RoutePairs routes = new RoutePairs(mapSize, districts, engine, pairs);
+        return i -> routes.map.getDistance(routes.sources[i], routes.sinks[i]);
+    }
+
+    public static IntFunction<Object> route(int mapSize, int districts, String engine, int pairs) {
+        RoutePairs routes = new RoutePairs(mapSize, districts, engine, pairs);
+        return i -> routes.map.getRoute(routes.sources[i], routes.sinks[i]);
+    }
+
+    public static IntFunction<Object> routeNodes(int mapSize, int districts, String engine, int pairs) {
+        RoutePairs routes = new RoutePairs(mapSize, districts, engine, pairs);
+        return i -> routes.map.getRoute(routes.sources[i], routes.sinks[i]).getNodes();
+    }
+
+    public static Supplier<Object> quote(int mapSize, int districts, int passengers, String planner, int flex) {
+        QuoteFixture quote = new QuoteFixture(mapSize, districts, passengers, planner, flex);
+        return () -> Quote.price(
+                quote.map, quote.planner, quote.vehicle, quote.plan,
+                quote.candidate, quote.trip, DriverAgent.DRIVER_PREMIUM
+        );
+    }
+
+    public static Supplier<Object> passengerPlans(int mapSize, int districts, int passengers) {
+        QuoteFixture quote = new QuoteFixture(mapSize, districts, passengers, "insertion", 0);
+        return quote.plan::getPassengerPlans;
+    }
+
+    public static Supplier<Object> cfpRoundTrip(int mapSize, int districts, int passengers, String codecName) {
+        QuoteFixture quote = new QuoteFixture(mapSize, districts, passengers, "insertion", 0);
+        ContentCodec codec = codecName.equals("json") ? JsonCodec.INSTANCE : BinaryCodec.INSTANCE;
+        List<PassengerPlan> riders = quote.plan.getRiders();
+        return () -> {
+            ACLMessage msg = new ACLMessage(ACLMessage.CFP);
+            codec.writeCfp(msg, quote.trip, riders);
+            return ContentCodec.forMessage(msg).readCfp(msg, quote.map);
+        };
+    }
+
+    public static Supplier<Object> reportRoundTrip(int mapSize, int districts, int passengers, String codecName) {
+        QuoteFixture quote = new QuoteFixture(mapSize, districts, passengers, "insertion", 0);
+        ContentCodec codec = codecName.equals("json") ? JsonCodec.INSTANCE : BinaryCodec.INSTANCE;
+        ContentCodec.Report report = new ContentCodec.Report(
+                ContentCodec.Report.DRIVER, quote.plan.getRoute().getCost(),
+                quote.plan.getRoute().getCost(), quote.plan.getIncome(),
+                quote.plan.getRoute().getNodes(), quote.plan.getPassengerPlans()
+        );
+        return () -> {
+            ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+            codec.writeReport(msg, report);
+            return ContentCodec.forMessage(msg).readReport(msg, quote.map);
+        };
+    }
+
+    private static MapModel prepareMap(int mapSize, int districts, String engine) {
+        MapModel map = MapModel.generate(mapSize, 4, districts);
+        switch (engine) {
+            case "oracle":
+                map.buildDistanceOracle();
+                break;
+            case "ch":
+                map.buildContractionHierarchy();
+                break;
+            case "auto":
+                if (map.getNodes().size() <= ORACLE_MAX_NODES) {
+                    map.buildDistanceOracle();
+                } else {
+                    map.buildContractionHierarchy();
+                }
+                break;
+            default:
+                break;
+        }
+        return map;
+    }
+
+    private static class RoutePairs {
+        final MapModel map;
+        final MapModel.Node[] sources;
+        final MapModel.Node[] sinks;
+
+        RoutePairs(int mapSize, int districts, String engine, int pairs) {
+            map = prepareMap(mapSize, districts, engine);
+            List<MapModel.Node> nodes = map.getNodes();
+            Random rnd = new Random(42);
+            sources = new MapModel.Node[pairs];
+            sinks = new MapModel.Node[pairs];
+            for (int i = 0; i < pairs; ++i) {
+                sources[i] = nodes.get(rnd.nextInt(nodes.size()));
+                sinks[i] = nodes.get(rnd.nextInt(nodes.size()));
+            }
+        }
+    }
+
+    // with flex > 0 every trip may leave within flex minutes of 8:00 and arrive by 8:00 plus four times flex
+    private static class QuoteFixture {
+        final MapModel map;
+        final RoutePlanner planner;
+        final MapModel.Intention vehicle;
+        final Plan plan;
+        final AID candidate;
+        final MapModel.Intention trip;
+
+        QuoteFixture(int mapSize, int districts, int passengers, String plannerName, int flex) {
+            map = prepareMap(mapSize, districts, "auto");
+
+            RoutePlanner insertion = new InsertionPlanner(map, DriverAgent.CAPACITY);
+            switch (plannerName) {
+                case "greedy":
+                    planner = new GreedyPlanner(map, DriverAgent.CAPACITY);
+                    break;
+                case "exact":
+                    planner = new ExactPlanner(
+                            map, DriverAgent.CAPACITY,
+                            DriverAgent.EXACT_PLAN_MAX_STOPS, DriverAgent.EXACT_PLAN_BUDGET_NS, insertion
+                    );
+                    break;
+                default:
+                    planner = insertion;
+                    break;
+            }
+
+            List<MapModel.Node> nodes = map.getNodes();
+            Random rnd = new Random(42);
+            TimeWindow departure = flex > 0 ? new TimeWindow(8 * 60, 8 * 60 + flex) : TimeWindow.ANY;
+            TimeWindow arrival = flex > 0 ? new TimeWindow(0, 8 * 60 + 4 * flex) : TimeWindow.ANY;
+            vehicle = new MapModel.Intention(
+                    nodes.get(rnd.nextInt(nodes.size())), nodes.get(rnd.nextInt(nodes.size())), departure, arrival
+            );
+
+            List<Destination> stops = new ArrayList<>();
+            Map<AID, Double> payments = new HashMap<>();
+            for (int i = 0; i < passengers; ++i) {
+                AID aid = new AID("passenger" + i + "@bench", AID.ISGUID);
+                List<Destination> next = insertion.plan(
+                        vehicle, stops,
+                        new Destination(aid, Destination.Tag.SOURCE, nodes.get(rnd.nextInt(nodes.size())), departure),
+                        new Destination(aid, Destination.Tag.SINK, nodes.get(rnd.nextInt(nodes.size())), arrival)
+                );
+                if (next != null) {
+                    stops = next;
+                    payments.put(aid, 1.0);
+                }
+            }
+            plan = new Plan(Quote.getVehicleRoute(map, vehicle, stops), stops, payments, passengers);
+
+            candidate = new AID("candidate@bench", AID.ISGUID);
+            trip = new MapModel.Intention(
+                    nodes.get(rnd.nextInt(nodes.size())), nodes.get(rnd.nextInt(nodes.size())), departure, arrival
+            );
+        }
+    }
+}
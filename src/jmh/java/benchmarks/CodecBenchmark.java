@@ -0,0 +1,43 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CodecBenchmark {
+
+    @Param({"1004"})
+    public int mapSize;
+
+    @Param({"10"})
+    public int districts;
+
+    @Param({"0", "3"})
+    public int passengers;
+
+    @Param({"json", "binary"})
+    public String codec;
+
+    private Supplier<Object> cfp;
+    private Supplier<Object> report;
+
+    @Setup
+    public void setup() {
+        cfp = Fixtures.load("cfpRoundTrip", mapSize, districts, passengers, codec);
+        report = Fixtures.load("reportRoundTrip", mapSize, districts, passengers, codec);
+    }
+
+    @Benchmark
+    public Object cfp() {
+        return cfp.get();
+    }
+
+    @Benchmark
+    public Object report() {
+        return report.get();
+    }
+}
@@ -0,0 +1,24 @@
+package benchmarks;
+
+import java.lang.reflect.Method;
+
+final class Fixtures {
+
+    private static final String FIXTURES_CLASS = "BenchmarkFixtures";
+
+    @SuppressWarnings("unchecked")
+    static <T> T load(String name, Object... args) {
+        try {
+            for (Method method: Class.forName(FIXTURES_CLASS).getMethods()) {
+                if (method.getName().equals(name) && method.getParameterCount() == args.length) {
+                    return (T) method.invoke(null, args);
+                }
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot load fixture " + name, e);
+        }
+        throw new IllegalArgumentException("Unknown fixture " + name);
+    }
+
+    private Fixtures() { }
+}
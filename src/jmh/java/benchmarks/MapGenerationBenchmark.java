@@ -0,0 +1,30 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MapGenerationBenchmark {
+
+    @Param({"104", "1004", "10004"})
+    public int mapSize;
+
+    @Param({"10", "50"})
+    public int districts;
+
+    private Supplier<Object> generate;
+
+    @Setup
+    public void setup() {
+        generate = Fixtures.load("generate", mapSize, districts);
+    }
+
+    @Benchmark
+    public Object generate() {
+        return generate.get();
+    }
+}
@@ -0,0 +1,47 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QuoteBenchmark {
+
+    @Param({"104", "1004"})
+    public int mapSize;
+
+    @Param({"10"})
+    public int districts;
+
+    @Param({"0", "1", "2", "3"})
+    public int passengers;
+
+    @Param({"greedy", "insertion", "exact"})
+    public String planner;
+
+    // minutes of slack in the morning-peak time windows, 0 for untimed trips
+    @Param({"0", "30"})
+    public int flex;
+
+    private Supplier<Object> quote;
+    private Supplier<Object> passengerPlans;
+
+    @Setup
+    public void setup() {
+        quote = Fixtures.load("quote", mapSize, districts, passengers, planner, flex);
+        passengerPlans = Fixtures.load("passengerPlans", mapSize, districts, passengers);
+    }
+
+    @Benchmark
+    public Object quote() {
+        return quote.get();
+    }
+
+    @Benchmark
+    public Object passengerPlans() {
+        return passengerPlans.get();
+    }
+}
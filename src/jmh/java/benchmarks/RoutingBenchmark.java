@@ -0,0 +1,51 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.function.IntToDoubleFunction;
+
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RoutingBenchmark {
+
+    private static final int PAIR_COUNT = 1024;
+
+    @Param({"104", "1004", "10004"})
+    public int mapSize;
+
+    @Param({"10", "50"})
+    public int districts;
+
+    @Param({"dijkstra", "oracle", "ch"})
+    public String engine;
+
+    private IntToDoubleFunction distance;
+    private IntFunction<Object> route;
+    private IntFunction<Object> routeNodes;
+    private int next;
+
+    @Setup
+    public void setup() {
+        distance = Fixtures.load("distance", mapSize, districts, engine, PAIR_COUNT);
+        route = Fixtures.load("route", mapSize, districts, engine, PAIR_COUNT);
+        routeNodes = Fixtures.load("routeNodes", mapSize, districts, engine, PAIR_COUNT);
+    }
+
+    @Benchmark
+    public double getDistance() {
+        return distance.applyAsDouble(next++ & (PAIR_COUNT - 1));
+    }
+
+    @Benchmark
+    public Object getRoute() {
+        return route.apply(next++ & (PAIR_COUNT - 1));
+    }
+
+    @Benchmark
+    public Object getRouteNodes() {
+        return routeNodes.apply(next++ & (PAIR_COUNT - 1));
+    }
+}
@@ -0,0 +1,261 @@
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Bounded multi-producer ring of log records drained by one writer thread, so agent threads never format
+// messages or contend on stdout; a full ring drops DEBUG and TRACE records, while INFO and above wait for room.
+// The writer sleeps until a record arrives, so an idle appender costs nothing.
+// Records below INFO go to the binary trace when one is configured, everything else is formatted as text
+public class AsyncAppender {
+
+    static final int TRACE_MAGIC = 0x43505452;
+    static final byte TRACE_FORMAT = 0;
+    static final byte TRACE_RECORD = 1;
+
+    private static final long FULL_RING_PARK_NS = 50 * 1000;
+    private static final long FLUSH_WAIT_MS = 10;
+
+    private static class Record {
+        final long nanos;
+        final Log.Level level;
+        final String format;
+        final Object[] args;
+
+        Record(long nanos, Log.Level level, String format, Object[] args) {
+            this.nanos = nanos;
+            this.level = level;
+            this.format = format;
+            this.args = args;
+        }
+    }
+
+    private final AtomicReferenceArray<Record> slots;
+    private final int mask;
+    // next sequence to claim and next sequence to drain
+    private final AtomicLong head;
+    private final AtomicLong tail;
+    private final LongAdder dropped;
+    private final long startNanos;
+
+    private final PrintStream text;
+    private final DataOutputStream trace;
+    // format string -> id already written to the trace
+    private final Map<String, Integer> traceFormats;
+    private final Thread writer;
+    // set by the writer before it parks; appenders that see it wake it up
+    private volatile boolean sleeping;
+    private volatile boolean closed;
+
+    public AsyncAppender(int capacity, PrintStream text, OutputStream trace) throws IOException {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+        this.dropped = new LongAdder();
+        this.startNanos = System.nanoTime();
+        this.text = text;
+        this.trace = trace == null ? null : new DataOutputStream(new BufferedOutputStream(trace, 1 << 16));
+        this.traceFormats = new HashMap<>();
+        if (this.trace != null) {
+            this.trace.writeInt(TRACE_MAGIC);
+        }
+
+        this.writer = new Thread(this::drainLoop, "log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public void append(Log.Level level, String format, Object[] args) {
+        long seq;
+        while (true) {
+            seq = head.get();
+            if (seq - tail.get() < slots.length()) {
+                if (head.compareAndSet(seq, seq + 1)) {
+                    break;
+                }
+                continue;
+            }
+            if (level.compareTo(Log.Level.INFO) < 0) {
+                dropped.increment();
+                return;
+            }
+            if (!writer.isAlive()) {
+                text.print(String.format(format, args));
+                return;
+            }
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(FULL_RING_PARK_NS);
+        }
+        // a volatile store, so that the writer either sees the record or is seen sleeping
+        slots.set((int) (seq & mask), new Record(System.nanoTime(), level, format, args));
+        if (sleeping) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    // waits until everything appended so far is written
+    public void flush() {
+        long target = head.get();
+        synchronized (this) {
+            while (tail.get() < target && writer.isAlive()) {
+                LockSupport.unpark(writer);
+                try {
+                    wait(FLUSH_WAIT_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    public void close() {
+        flush();
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drainLoop() {
+        long reportedDrops = 0;
+        while (true) {
+            long seq = tail.get();
+            int slot = (int) (seq & mask);
+            Record record = slots.get(slot);
+            if (record == null) {
+                // a claimed slot may still be in flight, so only stop once nothing was claimed either
+                if (closed && head.get() == seq) {
+                    break;
+                }
+                flushOutputs();
+                synchronized (this) {
+                    notifyAll();
+                }
+                sleeping = true;
+                if (slots.get(slot) == null && !closed) {
+                    LockSupport.park(this);
+                }
+                sleeping = false;
+                continue;
+            }
+
+            slots.lazySet(slot, null);
+            write(record);
+            tail.lazySet(seq + 1);
+
+            long drops = dropped.sum();
+            if (drops != reportedDrops) {
+                text.printf("log - %d records dropped, the ring is full\n", drops - reportedDrops);
+                reportedDrops = drops;
+            }
+        }
+        flushOutputs();
+    }
+
+    private void write(Record record) {
+        try {
+            if (trace != null && record.level.compareTo(Log.Level.INFO) < 0) {
+                writeTrace(record);
+            } else {
+                text.print(String.format(record.format, record.args));
+            }
+        } catch (IOException | RuntimeException e) {
+            text.println("log - cannot write record: " + e);
+        }
+    }
+
+    private void writeTrace(Record record) throws IOException {
+        Integer id = traceFormats.get(record.format);
+        if (id == null) {
+            id = traceFormats.size();
+            traceFormats.put(record.format, id);
+            trace.writeByte(TRACE_FORMAT);
+            trace.writeInt(id);
+            trace.writeUTF(record.format);
+        }
+
+        trace.writeByte(TRACE_RECORD);
+        trace.writeLong(record.nanos - startNanos);
+        trace.writeByte(record.level.ordinal());
+        trace.writeInt(id);
+        trace.writeByte(record.args.length);
+        for (Object arg: record.args) {
+            if (arg instanceof Integer) {
+                trace.writeByte('I');
+                trace.writeInt((Integer) arg);
+            } else if (arg instanceof Long) {
+                trace.writeByte('J');
+                trace.writeLong((Long) arg);
+            } else if (arg instanceof Double) {
+                trace.writeByte('D');
+                trace.writeDouble((Double) arg);
+            } else if (arg == null) {
+                trace.writeByte('N');
+            } else {
+                trace.writeByte('S');
+                trace.writeUTF(arg.toString());
+            }
+        }
+    }
+
+    private void flushOutputs() {
+        text.flush();
+        if (trace != null) {
+            try {
+                trace.flush();
+            } catch (IOException e) {
+                text.println("log - cannot flush trace: " + e);
+            }
+        }
+    }
+
+    // prints a binary trace as text, one record per line prefixed with its time since start
+    public static void dump(InputStream in, PrintStream out) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != TRACE_MAGIC) {
+            throw new IOException("Not a carpool trace");
+        }
+
+        Map<Integer, String> formats = new HashMap<>();
+        Log.Level[] levels = Log.Level.values();
+        while (true) {
+            int kind = data.read();
+            if (kind < 0) {
+                return;
+            }
+            if (kind == TRACE_FORMAT) {
+                int id = data.readInt();
+                formats.put(id, data.readUTF());
+                continue;
+            }
+
+            long nanos = data.readLong();
+            Log.Level level = levels[data.readByte()];
+            String format = formats.get(data.readInt());
+            Object[] args = new Object[data.readByte()];
+            for (int i = 0; i < args.length; ++i) {
+                switch (data.readByte()) {
+                    case 'I': args[i] = data.readInt(); break;
+                    case 'J': args[i] = data.readLong(); break;
+                    case 'D': args[i] = data.readDouble(); break;
+                    case 'S': args[i] = data.readUTF(); break;
+                    default: args[i] = null; break;
+                }
+            }
+            out.printf("%10.3f ms %-5s %s", nanos / 1e6, level, String.format(format, args));
+        }
+    }
+}
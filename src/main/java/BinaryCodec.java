@@ -0,0 +1,287 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import jade.core.AID;
+import jade.lang.acl.ACLMessage;
+
+// Compact content sent as a byte sequence: a kind byte, then node ids as varints, payments and costs as raw
+// doubles, agent names as length-prefixed utf-8 and routes as zigzag deltas between consecutive node ids. Trips
+// in a cfp carry a flag byte and, if they have time windows, the four window bounds as doubles
+public class BinaryCodec implements ContentCodec {
+
+    public static final String LANGUAGE = "carpool-binary";
+    public static final BinaryCodec INSTANCE = new BinaryCodec();
+
+    private static final byte CFP = 1;
+    private static final byte PROPOSAL = 2;
+    private static final byte REFUSAL = 3;
+    private static final byte DRIVER_REPORT = 4;
+    private static final byte PASSENGER_REPORT = 5;
+
+    private BinaryCodec() { }
+
+    @Override
+    public String getLanguage() {
+        return LANGUAGE;
+    }
+
+    @Override
+    public void writeCfp(ACLMessage msg, MapModel.Intention intention, List<PassengerPlan> riders) {
+        Output out = new Output(16 + 48 * riders.size());
+        out.writeByte(CFP);
+        out.writeVarInt(intention.from.id);
+        out.writeVarInt(intention.to.id);
+        writeWindows(out, intention.departure, intention.arrival);
+        out.writeVarInt(riders.size());
+        for (PassengerPlan rider: riders) {
+            out.writeString(rider.aid.getName());
+            out.writeVarInt(rider.from.id);
+            out.writeVarInt(rider.to.id);
+            writeWindows(out, rider.departure, rider.arrival);
+        }
+        out.writeTo(msg);
+    }
+
+    @Override
+    public Cfp readCfp(ACLMessage msg, MapModel map) {
+        Input in = new Input(msg, CFP);
+        MapModel.Node from = ContentCodec.requireNode(map, in.readVarInt());
+        MapModel.Node to = ContentCodec.requireNode(map, in.readVarInt());
+        TimeWindow[] windows = readWindows(in);
+        MapModel.Intention intention = new MapModel.Intention(from, to, windows[0], windows[1]);
+        int count = in.readCount();
+        List<PassengerPlan> riders = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            AID aid = new AID(in.readString(), AID.ISGUID);
+            MapModel.Node riderFrom = ContentCodec.requireNode(map, in.readVarInt());
+            MapModel.Node riderTo = ContentCodec.requireNode(map, in.readVarInt());
+            windows = readWindows(in);
+            riders.add(new PassengerPlan(aid, riderFrom, riderTo, 0, windows[0], windows[1]));
+        }
+        return new Cfp(intention, riders);
+    }
+
+    private static void writeWindows(Output out, TimeWindow departure, TimeWindow arrival) {
+        if (!departure.isBounded() && !arrival.isBounded()) {
+            out.writeByte(0);
+            return;
+        }
+        out.writeByte(1);
+        out.writeDouble(departure.earliest);
+        out.writeDouble(departure.latest);
+        out.writeDouble(arrival.earliest);
+        out.writeDouble(arrival.latest);
+    }
+
+    private static TimeWindow[] readWindows(Input in) {
+        if (in.readByte() == 0) {
+            return new TimeWindow[] { TimeWindow.ANY, TimeWindow.ANY };
+        }
+        return new TimeWindow[] {
+                new TimeWindow(in.readDouble(), in.readDouble()), new TimeWindow(in.readDouble(), in.readDouble())
+        };
+    }
+
+    @Override
+    public void writeProposal(ACLMessage msg, double payment) {
+        Output out = new Output(9);
+        out.writeByte(PROPOSAL);
+        out.writeDouble(payment);
+        out.writeTo(msg);
+    }
+
+    @Override
+    public double readProposal(ACLMessage msg) {
+        return new Input(msg, PROPOSAL).readDouble();
+    }
+
+    @Override
+    public void writeRefusal(ACLMessage msg, String reason) {
+        Output out = new Output(16);
+        out.writeByte(REFUSAL);
+        out.writeString(reason);
+        out.writeTo(msg);
+    }
+
+    @Override
+    public void writeReport(ACLMessage msg, Report report) {
+        if (!report.senderType.equals(Report.DRIVER)) {
+            Output out = new Output(9);
+            out.writeByte(PASSENGER_REPORT);
+            out.writeDouble(report.initialCost);
+            out.writeTo(msg);
+            return;
+        }
+
+        Output out = new Output(32 + 2 * report.route.size() + 56 * report.passengers.size());
+        out.writeByte(DRIVER_REPORT);
+        out.writeDouble(report.initialCost);
+        out.writeDouble(report.cost);
+        out.writeDouble(report.income);
+        out.writeVarInt(report.route.size());
+        int prev = 0;
+        for (MapModel.Node node: report.route) {
+            out.writeVarInt(zigzag(node.id - prev));
+            prev = node.id;
+        }
+        out.writeVarInt(report.passengers.size());
+        for (PassengerPlan passenger: report.passengers) {
+            out.writeString(passenger.aid.getName());
+            out.writeVarInt(passenger.from.id);
+            out.writeVarInt(passenger.to.id);
+            out.writeDouble(passenger.payment);
+        }
+        out.writeTo(msg);
+    }
+
+    @Override
+    public Report readReport(ACLMessage msg, MapModel map) {
+        byte[] content = msg.getByteSequenceContent();
+        if (content != null && content.length > 0 && content[0] == PASSENGER_REPORT) {
+            return Report.passenger(new Input(msg, PASSENGER_REPORT).readDouble());
+        }
+
+        Input in = new Input(msg, DRIVER_REPORT);
+        double initialCost = in.readDouble();
+        double cost = in.readDouble();
+        double income = in.readDouble();
+        int length = in.readCount();
+        List<MapModel.Node> route = new ArrayList<>(length);
+        int prev = 0;
+        for (int i = 0; i < length; ++i) {
+            prev += unzigzag(in.readVarInt());
+            route.add(ContentCodec.requireNode(map, prev));
+        }
+        int count = in.readCount();
+        List<PassengerPlan> passengers = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            AID aid = new AID(in.readString(), AID.ISGUID);
+            MapModel.Node from = ContentCodec.requireNode(map, in.readVarInt());
+            MapModel.Node to = ContentCodec.requireNode(map, in.readVarInt());
+            passengers.add(new PassengerPlan(aid, from, to, in.readDouble()));
+        }
+        return new Report(Report.DRIVER, initialCost, cost, income, route, passengers);
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static class Output {
+        private byte[] buf;
+        private int size;
+
+        Output(int capacity) {
+            buf = new byte[Math.max(capacity, 8)];
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            buf[size++] = (byte) value;
+        }
+
+        void writeVarInt(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buf[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[size++] = (byte) value;
+        }
+
+        void writeDouble(double value) {
+            ensure(8);
+            long bits = Double.doubleToLongBits(value);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buf[size++] = (byte) (bits >>> shift);
+            }
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, size, bytes.length);
+            size += bytes.length;
+        }
+
+        void writeTo(ACLMessage msg) {
+            msg.setLanguage(LANGUAGE);
+            msg.setByteSequenceContent(size == buf.length ? buf : Arrays.copyOf(buf, size));
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(2 * buf.length, size + extra));
+            }
+        }
+    }
+
+    private static class Input {
+        private final byte[] buf;
+        private int pos;
+
+        Input(ACLMessage msg, byte kind) {
+            buf = msg.getByteSequenceContent();
+            if (buf == null || buf.length == 0 || buf[0] != kind) {
+                throw new IllegalArgumentException("Expected binary content of kind " + kind);
+            }
+            pos = 1;
+        }
+
+        // content comes from other agents, so running past its end is malformed input and not a bug here
+        private void require(int bytes) {
+            if (bytes < 0 || bytes > buf.length - pos) {
+                throw new IllegalArgumentException("Truncated binary content");
+            }
+        }
+
+        byte readByte() {
+            require(1);
+            return buf[pos++];
+        }
+
+        int readVarInt() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                if (shift > 28) {
+                    throw new IllegalArgumentException("Malformed varint in binary content");
+                }
+                byte b = readByte();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        // a count of items that take at least one byte each, checked before anything is sized by it
+        int readCount() {
+            int count = readVarInt();
+            require(count);
+            return count;
+        }
+
+        double readDouble() {
+            require(8);
+            long bits = 0;
+            for (int i = 0; i < 8; ++i) {
+                bits = (bits << 8) | (buf[pos++] & 0xFF);
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        String readString() {
+            int length = readCount();
+            String value = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+import jade.core.AID;
+
+// Registered drivers grouped by origin district and by corridor (origin and destination node), so that
+// cfps go to the drivers whose route the passenger fits best instead of to random ones;
+// in a partitioned deployment districts of the own container are scanned before those of the others
+public class CandidateIndex {
+
+    private static class Corridor {
+        final MapModel.Node from;
+        final MapModel.Node to;
+        final double length;
+        // guarded by the corridor itself
+        final ArrayList<AID> drivers;
+
+        Corridor(MapModel.Node from, MapModel.Node to, double length) {
+            this.from = from;
+            this.to = to;
+            this.length = length;
+            this.drivers = new ArrayList<>();
+        }
+    }
+
+    private static class Candidate {
+        final Corridor corridor;
+        final double detour;
+
+        Candidate(Corridor corridor, double detour) {
+            this.corridor = corridor;
+            this.detour = detour;
+        }
+    }
+
+    private final MapModel map;
+    // origin district id -> corridor key -> corridor
+    private final ConcurrentHashMap<Integer, ConcurrentHashMap<Long, Corridor>> districts;
+    private final ConcurrentHashMap<AID, Corridor> registered;
+    // district id -> other district ids, nearest first
+    private final ConcurrentHashMap<Integer, int[]> districtOrders;
+    private final Map<Integer, MapModel.Node> representatives;
+    // districts owned by this container; drivers of the others are mirrored from the DF and asked last
+    private final IntPredicate local;
+    private final Set<AID> remote;
+    // bumped on every registration, so idle drivers can notice newly available ones
+    private final AtomicLong registrations;
+    private final LongAdder queries;
+    private final LongAdder cfps;
+    private final LongAdder remoteCfps;
+    private final LongAdder proposals;
+
+    public CandidateIndex(MapModel map) {
+        this(map, districtId -> true);
+    }
+
+    public CandidateIndex(MapModel map, IntPredicate local) {
+        this.map = map;
+        this.local = local;
+        this.remote = ConcurrentHashMap.newKeySet();
+        this.districts = new ConcurrentHashMap<>();
+        this.registered = new ConcurrentHashMap<>();
+        this.districtOrders = new ConcurrentHashMap<>();
+        this.representatives = new HashMap<>();
+        this.registrations = new AtomicLong();
+        this.queries = new LongAdder();
+        this.cfps = new LongAdder();
+        this.remoteCfps = new LongAdder();
+        this.proposals = new LongAdder();
+
+        for (MapModel.Node node: map.getNodes()) {
+            representatives.putIfAbsent(node.districtId, node);
+        }
+    }
+
+    public void register(AID aid, MapModel.Intention intention) {
+        long key = ((long) intention.from.id << 32) | intention.to.id;
+        Corridor corridor = districts
+                .computeIfAbsent(intention.from.districtId, id -> new ConcurrentHashMap<>())
+                .computeIfAbsent(key, k -> new Corridor(
+                        intention.from, intention.to, map.getDistance(intention.from, intention.to)
+                ));
+        synchronized (corridor) {
+            corridor.drivers.add(aid);
+        }
+        registered.put(aid, corridor);
+        registrations.incrementAndGet();
+    }
+
+    public void registerRemote(AID aid, MapModel.Intention intention) {
+        remote.add(aid);
+        register(aid, intention);
+    }
+
+    public boolean isRemote(AID aid) {
+        return remote.contains(aid);
+    }
+
+    public void deregister(AID aid) {
+        remote.remove(aid);
+        Corridor corridor = registered.remove(aid);
+        if (corridor != null) {
+            synchronized (corridor) {
+                corridor.drivers.remove(aid);
+            }
+        }
+    }
+
+    public long getRegistrationCount() {
+        return registrations.get();
+    }
+
+    public int size() {
+        return registered.size();
+    }
+
+    // up to k registered drivers, ordered by the detour of carrying the passenger from start to end of their trip;
+    // districts are scanned nearest first and the scan stops after the first district that completes the k
+    public List<AID> query(MapModel.Intention passenger, int k, Predicate<AID> excluded, Random rnd) {
+        queries.increment();
+
+        ArrayList<Candidate> candidates = new ArrayList<>();
+        int found = 0;
+        int origin = passenger.from.districtId;
+        int[] order = getDistrictOrder(origin);
+        double direct = map.getDistance(passenger.from, passenger.to);
+        for (int i = -1; i < order.length && found < k; ++i) {
+            ConcurrentHashMap<Long, Corridor> district = districts.get(i < 0 ? origin : order[i]);
+            if (district == null) {
+                continue;
+            }
+            for (Corridor corridor: district.values()) {
+                // only drivers the caller may send to count towards k, or excluded ones would end the scan early
+                int usable = 0;
+                synchronized (corridor) {
+                    for (AID aid: corridor.drivers) {
+                        if (!excluded.test(aid)) {
+                            ++usable;
+                        }
+                    }
+                }
+                if (usable == 0) {
+                    continue;
+                }
+                double detour = map.getDistance(corridor.from, passenger.from) + direct
+                        + map.getDistance(passenger.to, corridor.to) - corridor.length;
+                candidates.add(new Candidate(corridor, detour));
+                found += usable;
+            }
+        }
+
+        // equal detours are served in random order, like the shuffled DF result used to be
+        Collections.shuffle(candidates, rnd);
+        candidates.sort((a, b) -> Double.compare(a.detour, b.detour));
+
+        ArrayList<AID> result = new ArrayList<>(k);
+        for (int i = 0; i < candidates.size() && result.size() < k; ++i) {
+            Corridor corridor = candidates.get(i).corridor;
+            synchronized (corridor) {
+                int size = corridor.drivers.size();
+                int start = size == 0 ? 0 : rnd.nextInt(size);
+                for (int j = 0; j < size && result.size() < k; ++j) {
+                    AID aid = corridor.drivers.get((start + j) % size);
+                    if (!excluded.test(aid)) {
+                        result.add(aid);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    public void recordCfps(int count) {
+        cfps.add(count);
+    }
+
+    public void recordCfps(List<AID> receivers) {
+        int crossing = 0;
+        for (AID aid: receivers) {
+            if (remote.contains(aid)) {
+                ++crossing;
+            }
+        }
+        cfps.add(receivers.size());
+        remoteCfps.add(crossing);
+    }
+
+    public void recordProposals(int count) {
+        proposals.add(count);
+    }
+
+    public long getQueryCount() {
+        return queries.sum();
+    }
+
+    public long getCfpCount() {
+        return cfps.sum();
+    }
+
+    public long getRemoteCfpCount() {
+        return remoteCfps.sum();
+    }
+
+    public long getProposalCount() {
+        return proposals.sum();
+    }
+
+    public double getHitRate() {
+        long sent = getCfpCount();
+        return sent == 0 ? 0.0 : (double) getProposalCount() / sent;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "queries=%d; cfps=%d; cross-container cfps=%d; proposals=%d; hit rate=%.3f",
+                getQueryCount(), getCfpCount(), getRemoteCfpCount(), getProposalCount(), getHitRate()
+        );
+    }
+
+    private int[] getDistrictOrder(int districtId) {
+        return districtOrders.computeIfAbsent(districtId, id -> {
+            MapModel.Node origin = representatives.get(id);
+            return representatives.keySet().stream()
+                    .filter(other -> !other.equals(id))
+                    .sorted(Comparator
+                            .comparing((Integer other) -> !local.test(other))
+                            .thenComparingDouble(other -> map.getDistance(origin, representatives.get(other)))
+                    )
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+        });
+    }
+}
@@ -1,5 +1,5 @@
+import java.io.File;
 import java.util.*;
-import java.util.stream.Collectors;
 
 import jade.core.*;
 import jade.domain.*;
@@ -8,16 +8,16 @@ import jade.lang.acl.*;
 import jade.core.behaviours.*;
 import jade.domain.FIPAAgentManagement.*;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
 
 public class CarpoolAgent extends Agent {
 
     public static String LOGGING_SERVICE_NAME = "LoggingService";
     public static String DRIVER_SERVICE_NAME = "DriverService";
+    public static String PARTITION_SERVICE_NAME = "PartitionService";
 
     public static ServiceDescription LOGGING_SERVICE;
     public static ServiceDescription DRIVER_SERVICE;
+    public static ServiceDescription PARTITION_SERVICE;
 
     static {
         LOGGING_SERVICE = new ServiceDescription();
@@ -27,124 +27,226 @@ public class CarpoolAgent extends Agent {
         DRIVER_SERVICE = new ServiceDescription();
         DRIVER_SERVICE.setName(DRIVER_SERVICE_NAME);
         DRIVER_SERVICE.setType("carpooling-services");
+
+        PARTITION_SERVICE = new ServiceDescription();
+        PARTITION_SERVICE.setName(PARTITION_SERVICE_NAME);
+        PARTITION_SERVICE.setType("carpooling-services");
     }
 
+    private static final int ORACLE_MAX_NODES = 4096;
+    private static final int LEG_CACHE_CAPACITY = 1 << 16;
+    private static final int DRIVER_COUNT = 60;
+    private static final long PARTITION_CHECK_PERIOD_MS = 1000;
+    private static final long SNAPSHOT_PERIOD_MS = 5 * 1000;
+    private static final double SAVING_HISTOGRAM_MIN = -4;
+    private static final double SAVING_BUCKET_WIDTH = 1;
+    private static final int SAVING_BUCKET_COUNT = 16;
+
     private MapModel map;
-    private Set<AID> agents;
+    private LegCache legCache;
+    private CandidateIndex candidates;
+    // the logging service entries, one subscription for all drivers of this container
+    private DirectoryCache loggers;
+    private Partition partition;
+    private ArrayList<DriverAgent> drivers;
+    private ResultAggregator results;
     private double initialCost;
 
+    // the service entry of one driver; the intention lets other containers index it without asking
+    static ServiceDescription describeDriver(MapModel.Intention intention) {
+        ServiceDescription service = new ServiceDescription();
+        service.setName(DRIVER_SERVICE_NAME);
+        service.setType(DRIVER_SERVICE.getType());
+        service.addProperties(new Property("from", Integer.toString(intention.from.id)));
+        service.addProperties(new Property("to", Integer.toString(intention.to.id)));
+        return service;
+    }
+
+    // started as carpool:CarpoolAgent, or by ContainerLauncher with "partition=i", "partitions=n";
+    // partition 0 is the logging service and every partition runs the drivers of its own districts
     protected void setup() {
         try {
-            map = MapModel.generate(104, 4, 10);
-            map.exportToDot();
+            partition = Partition.fromArguments(getArguments());
+            // -Dcarpool.map=<file> loads a map written by MapFile instead of generating one
+            String mapFile = System.getProperty("carpool.map");
+            if (mapFile == null) {
+                map = MapModel.generate(104, 4, 10);
+                if (partition.index == 0) {
+                    map.exportToDot();
+                }
+            } else {
+                map = MapFile.load(new File(mapFile));
+                Log.info("Carpool - map of %d nodes loaded from %s\n", map.getNodes().size(), mapFile);
+            }
 
-            ArrayList<DriverAgent> drivers = generateDrivers(60, map);
+            if (map.getRoutingEngine() instanceof DistanceOracle) {
+                Log.info("Carpool - distance oracle loaded with the map\n");
+            } else if (map.getNodes().size() <= ORACLE_MAX_NODES) {
+                DistanceOracle oracle = map.buildDistanceOracle();
+                Log.info(
+                        "Carpool - distance oracle for %d nodes built in %d ms, %d KB\n",
+                        oracle.size(),
+                        oracle.getBuildTimeMs(),
+                        oracle.getMemoryFootprint() / 1024
+                );
+            } else {
+                ContractionHierarchy hierarchy = map.buildContractionHierarchy();
+                Log.info(
+                        "Carpool - contraction hierarchy for %d nodes built in %d ms, %d shortcuts\n",
+                        hierarchy.size(),
+                        hierarchy.getBuildTimeMs(),
+                        hierarchy.getShortcutCount()
+                );
+                legCache = map.enableLegCache(LEG_CACHE_CAPACITY);
+            }
+
+            candidates = new CandidateIndex(map, partition::owns);
+            loggers = new DirectoryCache(this, LOGGING_SERVICE);
+            loggers.subscribe();
+            drivers = new ArrayList<>();
+            initialCost = 0;
+            // -Dcarpool.flex=<minutes> gives the commutes morning-peak time windows
+            double flex = Double.parseDouble(System.getProperty("carpool.flex", "0"));
+            List<MapModel.Intention> commutes = map.generateCommutes(DRIVER_COUNT, 42, flex);
+            for (int i = 0; i < commutes.size(); ++i) {
+                MapModel.Intention intention = commutes.get(i);
+                initialCost += map.getRoute(intention.from, intention.to).getCost();
+                if (partition.owns(intention.from.districtId)) {
+                    drivers.add(new DriverAgent(i + 1, intention, map, candidates, loggers));
+                }
+            }
+            Log.info("Carpool - %s runs %d of %d drivers\n", partition, drivers.size(), commutes.size());
+
+            if (!partition.isSingle()) {
+                addBehaviour(new DriverMirror(this, map, candidates, partition));
+            }
 
             DFAgentDescription dfd = new DFAgentDescription();
             dfd.setName(getAID());
-            dfd.addServices(LOGGING_SERVICE);
+            if (partition.index == 0) {
+                dfd.addServices(LOGGING_SERVICE);
+            }
+            if (!partition.isSingle()) {
+                dfd.addServices(PARTITION_SERVICE);
+            }
             DFService.register(this, dfd);
 
-            initialCost = 0;
-            ContainerController cc = getContainerController();
-            for (DriverAgent driver : drivers) {
-                cc.acceptNewAgent(driver.toString(), driver).start();
-                initialCost += driver.getInitialRouteCost();
+            if (partition.isSingle()) {
+                startDrivers();
+            } else {
+                // drivers start once every container is up, so none finishes before it could see the others
+                addBehaviour(new TickerBehaviour(this, PARTITION_CHECK_PERIOD_MS) {
+                    @Override
+                    protected void onTick() {
+                        DFAgentDescription template = new DFAgentDescription();
+                        template.addServices(PARTITION_SERVICE);
+                        try {
+                            if (DFService.search(myAgent, template).length >= partition.count) {
+                                startDrivers();
+                                stop();
+                            }
+                        } catch (Exception e) {
+                            System.out.println("Error: " + e);
+                            System.exit(1);
+                        }
+                    }
+                });
             }
 
-            agents = new HashSet<>();
-            agents.addAll(drivers.stream().map(Agent::getAID).collect(Collectors.toSet()));
+            if (partition.index != 0) {
+                addBehaviour(new TickerBehaviour(this, PARTITION_CHECK_PERIOD_MS) {
+                    @Override
+                    protected void onTick() {
+                        if (drivers.stream().allMatch(DriverAgent::isDone)) {
+                            Log.info("Carpool - %s done\n", partition);
+                            printPartitionStats();
+                            stop();
+                        }
+                    }
+                });
+                return;
+            }
 
+            // reports from the drivers; df notifications for the mirror are informs too and are left alone
+            MessageTemplate reports = MessageTemplate.and(
+                    MessageTemplate.MatchPerformative(ACLMessage.INFORM),
+                    MessageTemplate.not(MessageTemplate.MatchSender(getDefaultDF()))
+            );
+            results = new ResultAggregator(
+                    commutes.size(), SAVING_HISTOGRAM_MIN, SAVING_BUCKET_WIDTH, SAVING_BUCKET_COUNT
+            );
+            addBehaviour(new TickerBehaviour(this, SNAPSHOT_PERIOD_MS) {
+                @Override
+                protected void onTick() {
+                    if (results.isComplete()) {
+                        stop();
+                        return;
+                    }
+                    Log.info("Carpool - snapshot: %s\n", results.snapshot());
+                }
+            });
             addBehaviour(new Behaviour() {
-                private Map<AID, JSONObject> ready = new HashMap<>();
-
                 @Override
                 public void action() {
-                    if (allReady()) {
+                    ACLMessage msg = getAgent().receive(reports);
+                    if (msg == null) {
+                        block();
                         return;
                     }
-
-                    ACLMessage msg = getAgent().blockingReceive(
-                            MessageTemplate.MatchPerformative(ACLMessage.INFORM)
-                    );
                     AID sender = msg.getSender();
-                    JSONObject content = new JSONObject(msg.getContent());
-
-                    assert !ready.containsKey(sender);
-
-                    ready.put(sender, content);
+                    ContentCodec.Report content;
+                    try {
+                        content = ContentCodec.forMessage(msg).readReport(msg, map);
+                    } catch (IllegalArgumentException e) {
+                        Log.warn("Carpool - cannot read report from %s: %s\n", sender.getLocalName(), e.getMessage());
+                        return;
+                    }
+                    results.add(content);
 
-                    String waitFor = String.join(", ", agents.stream()
-                            .filter(aid -> !ready.containsKey(aid))
-                            .map(AID::getLocalName)
-                            .collect(Collectors.toSet())
+                    if (content.senderType.equals(ContentCodec.Report.DRIVER)) {
+                        Log.info(
+                                "------------------------------\n" +
+                                "%s ready to drive!\n" +
+                                "    route: %s\n" +
+                                "    route cost: %f\n" +
+                                "    income: %f\n" +
+                                "    passengers: \n%s\n",
+                                sender.getLocalName(), map.new Route(content.route).toString(),
+                                content.cost, content.income, getPassengers(content.passengers)
+                        );
+                    }
+                    Log.debug(
+                            "Carpool - receive inform from %s (%d of %d)\n",
+                            sender.getLocalName(), results.getReceived(), commutes.size()
                     );
-
-                    System.out.printf("Carpool - receive inform from %s\n", sender.getLocalName());
-                    System.out.printf("Carpool - still wait for: %s\n", waitFor);
                 }
 
                 @Override
                 public boolean done() {
-                    boolean isDone = allReady();
+                    boolean isDone = results.isComplete();
                     if (isDone) {
                         printStats();
                     }
                     return isDone;
                 }
 
-                private boolean allReady() {
-                    return ready.keySet().containsAll(agents);
-                }
-
                 private void printStats() {
-                    double totalCost = 0;
-                    for (Map.Entry<AID, JSONObject> entry: ready.entrySet()) {
-                        AID driver = entry.getKey();
-                        JSONObject content = entry.getValue();
-                        String senderType = content.getString("sender-type");
-
-                        if (senderType.equals("driver")) {
-                            String route = getRoute(content.getJSONArray("route"));
-                            String passengers = getPassengers(content.getJSONArray("passengers"));
-                            double routeCost = content.getDouble("cost");
-                            double income = content.getDouble("income");
-                            totalCost += routeCost;
-
-                            System.out.printf(
-                                    "------------------------------\n" +
-                                    "%s ready to drive!\n" +
-                                    "    route: %s\n" +
-                                    "    route cost: %f\n" +
-                                    "    income: %f\n" +
-                                    "    passengers: \n%s\n",
-                                    driver.getLocalName(), route, routeCost, income, passengers
-                            );
-                        }
-                    }
-
-                    System.out.printf("------------------------------\n");
-                    System.out.printf("Baseline route cost: %f\n", initialCost);
-                    System.out.printf("Resulting route cost: %f\n", totalCost);
-                }
-
-                private String getRoute(JSONArray array) {
-                    ArrayList<MapModel.Node> nodes = new ArrayList<>();
-                    for (int i = 0; i < array.length(); ++i) {
-                        nodes.add(MapModel.Node.getNodeByID(array.getInt(i)));
-                    }
-                    return map.new Route(nodes).toString();
+                    Log.info("------------------------------\n");
+                    Log.info("Baseline route cost: %f\n", initialCost);
+                    Log.info("Resulting route cost: %f\n", results.getTotalCost());
+                    Log.info("Results: %s\n", results.snapshot());
+                    Log.info("Saving per agent:\n%s", results.distribution());
+                    printPartitionStats();
                 }
 
-                private String getPassengers(JSONArray array) {
+                private String getPassengers(List<PassengerPlan> plans) {
                     StringBuilder builder = new StringBuilder();
-                    for (int i = 0; i < array.length(); ++i) {
-                        JSONObject obj = array.getJSONObject(i);
+                    for (PassengerPlan plan: plans) {
                         builder.append(String.format(
                                 "        %s - route: %d ---> %d; payment: %f\n",
-                                obj.getString("name"),
-                                obj.getInt("from"), obj.getInt("to"),
-                                obj.getDouble("payment")
+                                plan.aid.getLocalName(),
+                                plan.from.id, plan.to.id,
+                                plan.payment
                         ));
                     }
                     return builder.toString();
@@ -157,24 +259,33 @@ public class CarpoolAgent extends Agent {
         }
     }
 
-    private static ArrayList<DriverAgent> generateDrivers(int n, MapModel map) {
-        ArrayList<DriverAgent> vehicles = new ArrayList<>(n);
-        ArrayList<MapModel.Node> nodes = new ArrayList<>(map.getGraph().vertexSet());
-        Random rnd = new Random(42);
-        for (int i = 0; i < n; ++i) {
-            MapModel.Node from = nodes.get(rnd.nextInt(nodes.size()));
-            while (from.districtType != MapModel.DistrictType.Suburb) {
-                from = nodes.get(rnd.nextInt(nodes.size()));
-            }
-
-            MapModel.Node to = nodes.get(rnd.nextInt(nodes.size()));
-            while (to.districtType != MapModel.DistrictType.Center) {
-                to = nodes.get(rnd.nextInt(nodes.size()));
-            }
+    private void startDrivers() throws StaleProxyException {
+        ContainerController cc = getContainerController();
+        for (DriverAgent driver : drivers) {
+            cc.acceptNewAgent(driver.toString(), driver).start();
+        }
+    }
 
-            DriverAgent vehicle = new DriverAgent(new MapModel.Intention(from, to), map);
-            vehicles.add(vehicle);
+    private void printPartitionStats() {
+        Log.info("Cfp targeting: %s\n", candidates.toString());
+        if (!partition.isSingle() && candidates.getCfpCount() > 0) {
+            Log.info(
+                    "Cross-container cfp rate: %.3f\n",
+                    (double) candidates.getRemoteCfpCount() / candidates.getCfpCount()
+            );
+        }
+        // the drivers are done, so nothing looks the loggers up any more
+        loggers.unsubscribe();
+        Log.info("Directory cache: %s\n", loggers.toString());
+        if (legCache != null) {
+            Log.info("Leg cache: %s\n", legCache.toString());
+        }
+        if (Metrics.ENABLED) {
+            // per-agent counters stay in jmx and the periodic dump
+            Log.info("Metrics:\n%s", Metrics.format(name -> !name.startsWith("agent.")));
+        }
+        if (Log.getDroppedCount() > 0) {
+            Log.info("Log records dropped: %d\n", Log.getDroppedCount());
         }
-        return vehicles;
     }
 }
\ No newline at end of file
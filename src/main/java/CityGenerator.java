@@ -0,0 +1,269 @@
+import java.util.*;
+
+// Builds city-scale maps straight into a CompactGraph: districts are generated in parallel into edge arrays,
+// a union-find pass links whatever is still disconnected to the center, and the edges are laid out as CSR
+// without a JGraphT graph in between. Unlike MapModel.generate the map has exactly n nodes
+//
+// usage: CityGenerator [nodes=1000000] [center=10000] [districts=100] [seed=21] [queries=100]
+public class CityGenerator {
+
+    // centers up to this size stay complete graphs as in MapModel.generate, larger ones become grids
+    private static final int COMPLETE_CENTER_MAX = 16;
+    // a new suburb node attaches to one node by degree and, with this chance, to a second one
+    private static final double SECOND_LINK_PROBABILITY = 0.5;
+
+    private static class District {
+        final int id;
+        final MapModel.DistrictType type;
+        final int first;
+        final int size;
+        int[] from;
+        int[] to;
+        int edgeCount;
+
+        District(int id, MapModel.DistrictType type, int first, int size) {
+            this.id = id;
+            this.type = type;
+            this.first = first;
+            this.size = size;
+        }
+
+        void allocate(int capacity) {
+            from = new int[capacity];
+            to = new int[capacity];
+        }
+
+        void addEdge(int u, int v) {
+            from[edgeCount] = u;
+            to[edgeCount] = v;
+            ++edgeCount;
+        }
+    }
+
+    public static MapModel generate(int n, int centerN, int districtN, long seed) {
+        if (centerN < 1 || centerN > n || districtN < 1 || (districtN == 1 && centerN != n)
+                || (districtN > 1 && n - centerN < districtN - 1)) {
+            throw new IllegalArgumentException(String.format(
+                    "Cannot split %d nodes into a center of %d and %d districts", n, centerN, districtN
+            ));
+        }
+
+        District[] districts = layout(n, centerN, districtN);
+        MapModel.Node[] nodes = new MapModel.Node[n];
+        UnionFind components = new UnionFind(n);
+
+        // districts own disjoint node ranges, so they fill the node table and union-find side by side
+        Arrays.stream(districts).parallel().forEach(district -> {
+            for (int i = district.first; i < district.first + district.size; ++i) {
+                nodes[i] = new MapModel.Node(i, district.id, district.type);
+            }
+            if (district.type == MapModel.DistrictType.Center) {
+                buildCenter(district);
+            } else {
+                buildSuburb(district, new SplittableRandom(seed * 1000003 + district.id));
+            }
+            for (int e = 0; e < district.edgeCount; ++e) {
+                components.union(district.from[e], district.to[e]);
+            }
+        });
+
+        int edgeCount = 0;
+        for (District district: districts) {
+            edgeCount += district.edgeCount;
+        }
+        int[] from = new int[edgeCount + districtN];
+        int[] to = new int[edgeCount + districtN];
+        int e = 0;
+        for (District district: districts) {
+            System.arraycopy(district.from, 0, from, e, district.edgeCount);
+            System.arraycopy(district.to, 0, to, e, district.edgeCount);
+            e += district.edgeCount;
+        }
+
+        // every suburb gets one road to the center, then anything still apart is linked to it too
+        District center = districts[0];
+        Random rnd = new Random(seed);
+        for (int i = 1; i < districts.length; ++i) {
+            District suburb = districts[i];
+            int u = suburb.first + rnd.nextInt(suburb.size);
+            int v = center.first + rnd.nextInt(center.size);
+            from[e] = u;
+            to[e] = v;
+            ++e;
+            components.union(u, v);
+        }
+        for (int u = 0; u < n; ++u) {
+            if (!components.connected(u, center.first)) {
+                int v = center.first + rnd.nextInt(center.size);
+                if (e == from.length) {
+                    from = Arrays.copyOf(from, 2 * e);
+                    to = Arrays.copyOf(to, 2 * e);
+                }
+                from[e] = u;
+                to[e] = v;
+                ++e;
+                components.union(u, v);
+            }
+        }
+
+        return MapModel.fromCompactGraph(CompactGraph.fromEdges(nodes, from, to, null, e));
+    }
+
+    // center first with district id 1, then suburbs 2..districtN sharing the rest as evenly as possible
+    private static District[] layout(int n, int centerN, int districtN) {
+        District[] districts = new District[districtN];
+        districts[0] = new District(1, MapModel.DistrictType.Center, 0, centerN);
+        int first = centerN;
+        for (int i = 1; i < districtN; ++i) {
+            int size = (n - centerN) / (districtN - 1) + (i <= (n - centerN) % (districtN - 1) ? 1 : 0);
+            districts[i] = new District(i + 1, MapModel.DistrictType.Suburb, first, size);
+            first += size;
+        }
+        return districts;
+    }
+
+    // a complete graph while small, a street grid once a complete graph would be quadratic
+    private static void buildCenter(District district) {
+        int first = district.first;
+        int size = district.size;
+        if (size <= COMPLETE_CENTER_MAX) {
+            district.allocate(size * (size - 1) / 2);
+            for (int i = 0; i < size; ++i) {
+                for (int j = i + 1; j < size; ++j) {
+                    district.addEdge(first + i, first + j);
+                }
+            }
+            return;
+        }
+
+        int side = (int) Math.ceil(Math.sqrt(size));
+        district.allocate(2 * size);
+        for (int i = 0; i < size; ++i) {
+            if ((i + 1) % side != 0 && i + 1 < size) {
+                district.addEdge(first + i, first + i + 1);
+            }
+            if (i + side < size) {
+                district.addEdge(first + i, first + i + side);
+            }
+        }
+    }
+
+    // scale-free suburb by preferential attachment: picking a random end of an existing edge picks a node
+    // with probability proportional to its degree, in constant time
+    private static void buildSuburb(District district, SplittableRandom rnd) {
+        int first = district.first;
+        int size = district.size;
+        district.allocate(Math.max(0, 2 * (size - 1)));
+        int[] ends = new int[4 * size];
+        int endCount = 0;
+
+        for (int i = 1; i < size; ++i) {
+            int u = first + i;
+            int v = i == 1 ? first : ends[rnd.nextInt(endCount)];
+            district.addEdge(u, v);
+            ends[endCount++] = u;
+            ends[endCount++] = v;
+
+            if (i > 1 && rnd.nextDouble() < SECOND_LINK_PROBABILITY) {
+                // the two ends just added are left out, so w is never u itself
+                int w = ends[rnd.nextInt(endCount - 2)];
+                if (w != v) {
+                    district.addEdge(u, w);
+                    ends[endCount++] = u;
+                    ends[endCount++] = w;
+                }
+            }
+        }
+    }
+
+    // disjoint sets over node ids, union by size with path halving; unions on disjoint id ranges may run in
+    // parallel since they never touch the same entries
+    private static class UnionFind {
+        private final int[] parent;
+        private final int[] size;
+
+        UnionFind(int n) {
+            parent = new int[n];
+            size = new int[n];
+            for (int i = 0; i < n; ++i) {
+                parent[i] = i;
+                size[i] = 1;
+            }
+        }
+
+        int find(int u) {
+            while (parent[u] != u) {
+                parent[u] = parent[parent[u]];
+                u = parent[u];
+            }
+            return u;
+        }
+
+        void union(int u, int v) {
+            int a = find(u);
+            int b = find(v);
+            if (a == b) {
+                return;
+            }
+            if (size[a] < size[b]) {
+                int t = a;
+                a = b;
+                b = t;
+            }
+            parent[b] = a;
+            size[a] += size[b];
+        }
+
+        boolean connected(int u, int v) {
+            return find(u) == find(v);
+        }
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg: args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                System.out.println("Error: expected key=value, got " + arg);
+                System.exit(1);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+
+        int n = Integer.parseInt(options.getOrDefault("nodes", "1000000"));
+        int centerN = Integer.parseInt(options.getOrDefault("center", Integer.toString(Math.max(1, n / 100))));
+        int districtN = Integer.parseInt(options.getOrDefault("districts", "100"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "21"));
+        int queries = Integer.parseInt(options.getOrDefault("queries", "100"));
+
+        long start = System.nanoTime();
+        MapModel map = null;
+        try {
+            map = generate(n, centerN, districtN, seed);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+        long buildNs = System.nanoTime() - start;
+        CompactGraph graph = map.getCompactGraph();
+        System.out.printf(
+                "Generated %d nodes and %d edges in %d districts in %d ms; csr takes %.1f MB\n",
+                graph.size(), graph.edgeCount(), districtN, buildNs / 1000000,
+                graph.getMemoryFootprint() / 1e6
+        );
+
+        if (queries > 0) {
+            Random rnd = new Random(seed);
+            List<MapModel.Node> nodes = map.getNodes();
+            double length = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < queries; ++i) {
+                length += map.getDistance(nodes.get(rnd.nextInt(n)), nodes.get(rnd.nextInt(n)));
+            }
+            System.out.printf(
+                    "%d Dijkstra queries: %.2f ms per query, mean length %.1f\n",
+                    queries, (System.nanoTime() - start) / 1e6 / queries, length / queries
+            );
+        }
+    }
+}
@@ -0,0 +1,173 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.*;
+
+import org.jgrapht.*;
+
+public class CompactGraph {
+
+    // node ids are dense per map, so a node's id is its index; adjacency is held in buffers so that it can
+    // live on the heap or in pages mapped from a MapFile
+    private final MapModel.Node[] nodes;
+    private final IntBuffer offsets;
+    private final IntBuffer targets;
+    private final FloatBuffer weights;
+
+    public static CompactGraph build(List<MapModel.Node> nodeTable, UndirectedGraph<MapModel.Node, MapModel.Edge> graph) {
+        MapModel.Node[] nodes = nodeTable.toArray(new MapModel.Node[0]);
+        int n = nodes.length;
+
+        int[] offsets = new int[n + 1];
+        for (int i = 0; i < n; ++i) {
+            offsets[i + 1] = offsets[i] + graph.degreeOf(nodes[i]);
+        }
+
+        int[] targets = new int[offsets[n]];
+        float[] weights = new float[offsets[n]];
+        for (int i = 0; i < n; ++i) {
+            int e = offsets[i];
+            for (MapModel.Edge edge: graph.edgesOf(nodes[i])) {
+                targets[e] = Graphs.getOppositeVertex(graph, edge, nodes[i]).id;
+                weights[e] = (float) edge.getWeight();
+                ++e;
+            }
+        }
+
+        return new CompactGraph(nodes, offsets, targets, weights);
+    }
+
+    // undirected edge list as endpoint pairs (from[i], to[i]), laid out without an object graph;
+    // edges weigh 1 without weights
+    public static CompactGraph fromEdges(
+            MapModel.Node[] nodes, int[] from, int[] to, float[] edgeWeights, int edgeCount
+    ) {
+        int n = nodes.length;
+        int[] offsets = new int[n + 1];
+        for (int i = 0; i < edgeCount; ++i) {
+            ++offsets[from[i] + 1];
+            ++offsets[to[i] + 1];
+        }
+        for (int i = 0; i < n; ++i) {
+            offsets[i + 1] += offsets[i];
+        }
+
+        int[] next = Arrays.copyOf(offsets, n);
+        int[] targets = new int[offsets[n]];
+        float[] weights = new float[offsets[n]];
+        for (int i = 0; i < edgeCount; ++i) {
+            float weight = edgeWeights == null ? 1.0f : edgeWeights[i];
+            weights[next[from[i]]] = weight;
+            targets[next[from[i]]++] = to[i];
+            weights[next[to[i]]] = weight;
+            targets[next[to[i]]++] = from[i];
+        }
+
+        return new CompactGraph(nodes, offsets, targets, weights);
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    // adjacency already laid out as CSR arrays of which only the first offsets[n] arcs are used
+    static CompactGraph fromCsr(MapModel.Node[] nodes, int[] offsets, int[] targets, float[] weights) {
+        int arcs = offsets[nodes.length];
+        return new CompactGraph(
+                nodes, toDirect(offsets, nodes.length + 1), toDirect(targets, arcs), toDirect(weights, arcs)
+        );
+    }
+
+    // adjacency laid out elsewhere, e.g. mapped by MapFile; buffers are read with absolute gets only
+    static CompactGraph of(MapModel.Node[] nodes, IntBuffer offsets, IntBuffer targets, FloatBuffer weights) {
+        return new CompactGraph(nodes, offsets, targets, weights);
+    }
+
+    public int edgeCount() {
+        return targets.capacity() / 2;
+    }
+
+    public int indexOf(MapModel.Node node) {
+        return node.id;
+    }
+
+    public MapModel.Node getNode(int i) {
+        return nodes[i];
+    }
+
+    public int firstEdge(int u) {
+        return offsets.get(u);
+    }
+
+    public int endEdge(int u) {
+        return offsets.get(u + 1);
+    }
+
+    public int target(int e) {
+        return targets.get(e);
+    }
+
+    public float weight(int e) {
+        return weights.get(e);
+    }
+
+    // the lightest of parallel edges, which is the one every shortest path takes
+    public int findEdge(int u, int v) {
+        int found = -1;
+        for (int e = offsets.get(u); e < offsets.get(u + 1); ++e) {
+            if (targets.get(e) == v && (found < 0 || weights.get(e) < weights.get(found))) {
+                found = e;
+            }
+        }
+        return found;
+    }
+
+    public long getMemoryFootprint() {
+        return (long) offsets.capacity() * Integer.BYTES
+                + (long) targets.capacity() * Integer.BYTES
+                + (long) weights.capacity() * Float.BYTES;
+    }
+
+    IntBuffer getOffsets() {
+        return offsets.duplicate();
+    }
+
+    IntBuffer getTargets() {
+        return targets.duplicate();
+    }
+
+    FloatBuffer getWeights() {
+        return weights.duplicate();
+    }
+
+    private CompactGraph(MapModel.Node[] nodes, int[] offsets, int[] targets, float[] weights) {
+        this(nodes, toDirect(offsets, offsets.length), toDirect(targets, targets.length),
+                toDirect(weights, weights.length));
+    }
+
+    // built graphs use the same native-order direct buffers as mapped ones, so the accessors see a single
+    // buffer class and stay as fast as with plain arrays; heap buffers cost about a quarter of Dijkstra speed
+    private static IntBuffer toDirect(int[] values, int length) {
+        IntBuffer buffer = ByteBuffer.allocateDirect(length * Integer.BYTES)
+                .order(ByteOrder.nativeOrder())
+                .asIntBuffer();
+        buffer.put(values, 0, length).clear();
+        return buffer;
+    }
+
+    private static FloatBuffer toDirect(float[] values, int length) {
+        FloatBuffer buffer = ByteBuffer.allocateDirect(length * Float.BYTES)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        buffer.put(values, 0, length).clear();
+        return buffer;
+    }
+
+    private CompactGraph(MapModel.Node[] nodes, IntBuffer offsets, IntBuffer targets, FloatBuffer weights) {
+        this.nodes = nodes;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+    }
+}
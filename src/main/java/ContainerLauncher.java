@@ -0,0 +1,92 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
+import jade.wrapper.AgentContainer;
+
+// Runs the carpool on several JADE containers, each owning a partition of the districts
+//
+// usage: ContainerLauncher [containers=4] [host=localhost] [port=1099] [spawn=true]
+//     starts the main container with partition 0 and, unless spawn=false, one local JVM per further partition
+// usage: ContainerLauncher partition=i [containers=4] [host=localhost] [port=1099]
+//     joins the main container at host:port with partition i, e.g. from another machine
+public class ContainerLauncher {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg: args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                System.out.println("Error: expected key=value, got " + arg);
+                System.exit(1);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+
+        int containers = Integer.parseInt(options.getOrDefault("containers", "4"));
+        String host = options.getOrDefault("host", "localhost");
+        int port = Integer.parseInt(options.getOrDefault("port", "1099"));
+        Runtime.instance().setCloseVM(true);
+
+        if (options.containsKey("partition")) {
+            int index = Integer.parseInt(options.get("partition"));
+            startContainer(new Partition(index, containers), host, port, false);
+            return;
+        }
+
+        startContainer(new Partition(0, containers), host, port, true);
+        if (!Boolean.parseBoolean(options.getOrDefault("spawn", "true"))) {
+            return;
+        }
+
+        List<Process> children = new ArrayList<>();
+        java.lang.Runtime.getRuntime().addShutdownHook(new Thread(() -> children.forEach(Process::destroy)));
+        for (int i = 1; i < containers; ++i) {
+            children.add(spawn(i, containers, host, port));
+        }
+    }
+
+    private static void startContainer(Partition partition, String host, int port, boolean main) throws Exception {
+        Profile profile = new ProfileImpl(main);
+        profile.setParameter(Profile.MAIN_HOST, host);
+        profile.setParameter(Profile.MAIN_PORT, Integer.toString(port));
+        // peripheral containers on the same host need their own port
+        profile.setParameter(Profile.LOCAL_PORT, Integer.toString(port + partition.index));
+        profile.setParameter(Profile.NO_MTP, "true");
+        if (!main) {
+            profile.setParameter(Profile.CONTAINER_NAME, "Partition-" + partition.index);
+        }
+
+        AgentContainer container = main
+                ? Runtime.instance().createMainContainer(profile)
+                : Runtime.instance().createAgentContainer(profile);
+        if (container == null) {
+            System.out.println("Error: cannot start container for " + partition);
+            System.exit(1);
+        }
+
+        container.createNewAgent(
+                main ? "carpool" : "carpool-" + partition.index, CarpoolAgent.class.getName(),
+                new Object[] {"partition=" + partition.index, "partitions=" + partition.count}
+        ).start();
+    }
+
+    private static Process spawn(int index, int containers, String host, int port) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> command = new ArrayList<>(Arrays.asList(java, "-cp", System.getProperty("java.class.path")));
+        // the carpool settings (map file, logging, metrics) apply to every partition
+        for (String name: System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("carpool.")) {
+                command.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        command.addAll(Arrays.asList(
+                ContainerLauncher.class.getName(),
+                "partition=" + index, "containers=" + containers, "host=" + host, "port=" + port
+        ));
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+}
@@ -0,0 +1,80 @@
+import java.util.Collections;
+import java.util.List;
+
+import jade.lang.acl.ACLMessage;
+
+// Encodes the content of the negotiation and logging messages; the receiver picks the decoder by the message
+// language, so agents using different codecs still understand each other
+public interface ContentCodec {
+
+    String getLanguage();
+
+    void writeCfp(ACLMessage msg, MapModel.Intention intention, List<PassengerPlan> riders);
+
+    // the read methods throw IllegalArgumentException for content they cannot decode
+    Cfp readCfp(ACLMessage msg, MapModel map);
+
+    void writeProposal(ACLMessage msg, double payment);
+
+    double readProposal(ACLMessage msg);
+
+    void writeRefusal(ACLMessage msg, String reason);
+
+    void writeReport(ACLMessage msg, Report report);
+
+    Report readReport(ACLMessage msg, MapModel map);
+
+    static ContentCodec forMessage(ACLMessage msg) {
+        return BinaryCodec.LANGUAGE.equals(msg.getLanguage()) ? BinaryCodec.INSTANCE : JsonCodec.INSTANCE;
+    }
+
+    // node ids come from other agents, so unknown ones are rejected here instead of reaching the planner as null
+    static MapModel.Node requireNode(MapModel map, int id) {
+        MapModel.Node node = map.getNode(id);
+        if (node == null) {
+            throw new IllegalArgumentException("Unknown node " + id);
+        }
+        return node;
+    }
+
+    class Cfp {
+        public final MapModel.Intention intention;
+        // payments are not part of a cfp and are left at zero
+        public final List<PassengerPlan> riders;
+
+        public Cfp(MapModel.Intention intention, List<PassengerPlan> riders) {
+            this.intention = intention;
+            this.riders = riders;
+        }
+    }
+
+    // what an agent tells the logging service once it is done; passengers only send the sender type
+    // and the cost of the route they would have driven alone
+    class Report {
+        public static final String DRIVER = "driver";
+        public static final String PASSENGER = "passenger";
+
+        public final String senderType;
+        public final double initialCost;
+        public final double cost;
+        public final double income;
+        public final List<MapModel.Node> route;
+        public final List<PassengerPlan> passengers;
+
+        public Report(
+                String senderType, double initialCost, double cost, double income,
+                List<MapModel.Node> route, List<PassengerPlan> passengers
+        ) {
+            this.senderType = senderType;
+            this.initialCost = initialCost;
+            this.cost = cost;
+            this.income = income;
+            this.route = route;
+            this.passengers = passengers;
+        }
+
+        public static Report passenger(double initialCost) {
+            return new Report(PASSENGER, initialCost, 0, 0, Collections.emptyList(), Collections.emptyList());
+        }
+    }
+}
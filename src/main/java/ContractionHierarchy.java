@@ -0,0 +1,417 @@
+import java.util.*;
+
+public class ContractionHierarchy implements RoutingEngine {
+
+    private static final int WITNESS_SETTLE_LIMIT = 500;
+
+    private final CompactGraph graph;
+
+    // edges of the original graph and shortcuts; a shortcut spans childA (from..middle) and childB (middle..to)
+    private final int[] edgeFrom;
+    private final int[] edgeTo;
+    private final int[] edgeChildA;
+    private final int[] edgeChildB;
+
+    // upward graph: edges leading from a node to higher-ranked neighbours
+    private final int[] upOffsets;
+    private final int[] upTargets;
+    private final double[] upWeights;
+    private final int[] upEdges;
+
+    private final long buildTimeNs;
+    private final int shortcutCount;
+
+    private final StatePool<QueryState> queryStates;
+
+    public static ContractionHierarchy build(CompactGraph graph) {
+        return new Builder(graph).build();
+    }
+
+    @Override
+    public double getDistance(MapModel.Node source, MapModel.Node sink) {
+        QueryState state = queryStates.acquire();
+        try {
+            search(graph.indexOf(source), graph.indexOf(sink), state);
+            return state.best;
+        } finally {
+            queryStates.release(state);
+        }
+    }
+
+    @Override
+    public List<MapModel.Node> getPath(MapModel.Node source, MapModel.Node sink) {
+        QueryState state = queryStates.acquire();
+        try {
+            return getPath(graph.indexOf(source), graph.indexOf(sink), state);
+        } finally {
+            queryStates.release(state);
+        }
+    }
+
+    private List<MapModel.Node> getPath(int s, int t, QueryState state) {
+        search(s, t, state);
+        if (state.meeting < 0) {
+            return null;
+        }
+
+        ArrayList<MapModel.Node> path = new ArrayList<>();
+        ArrayDeque<Integer> forwardEdges = new ArrayDeque<>();
+        for (int v = state.meeting; v != s; v = edgeFrom[state.forward.parent[v]] ^ edgeTo[state.forward.parent[v]] ^ v) {
+            forwardEdges.push(state.forward.parent[v]);
+        }
+
+        path.add(graph.getNode(s));
+        int curr = s;
+        for (int edge: forwardEdges) {
+            curr = unpack(edge, curr, path);
+        }
+        while (curr != t) {
+            curr = unpack(state.backward.parent[curr], curr, path);
+        }
+        return path;
+    }
+
+    public int size() {
+        return graph.size();
+    }
+
+    public int getShortcutCount() {
+        return shortcutCount;
+    }
+
+    public long getBuildTimeMs() {
+        return buildTimeNs / 1000000;
+    }
+
+    private void search(int s, int t, QueryState state) {
+        state.reset();
+        state.forward.relax(s, 0, -1);
+        state.backward.relax(t, 0, -1);
+
+        while (true) {
+            boolean forwardActive = state.forward.minKey() < state.best;
+            boolean backwardActive = state.backward.minKey() < state.best;
+            if (!forwardActive && !backwardActive) {
+                break;
+            }
+            if (forwardActive && (!backwardActive || state.forward.minKey() <= state.backward.minKey())) {
+                settle(state.forward, state.backward, state);
+            } else {
+                settle(state.backward, state.forward, state);
+            }
+        }
+    }
+
+    private void settle(SearchState dir, SearchState other, QueryState state) {
+        int u = dir.heap.peekNode();
+        double d = dir.heap.peekKey();
+        dir.heap.pop();
+        if (d > dir.dist[u]) {
+            return;
+        }
+
+        if (other.dist[u] < Double.MAX_VALUE && d + other.dist[u] < state.best) {
+            state.best = d + other.dist[u];
+            state.meeting = u;
+        }
+
+        for (int i = upOffsets[u]; i < upOffsets[u + 1]; ++i) {
+            int v = upTargets[i];
+            double nd = d + upWeights[i];
+            if (nd < dir.dist[v]) {
+                dir.relax(v, nd, upEdges[i]);
+            }
+        }
+    }
+
+    // appends the nodes of edge after `from` and returns the opposite end
+    private int unpack(int edge, int from, List<MapModel.Node> path) {
+        int to = edgeFrom[edge] ^ edgeTo[edge] ^ from;
+        if (edgeChildA[edge] < 0) {
+            path.add(graph.getNode(to));
+            return to;
+        }
+        int first = edgeChildA[edge];
+        int second = edgeChildB[edge];
+        if (edgeFrom[first] != from && edgeTo[first] != from) {
+            first = edgeChildB[edge];
+            second = edgeChildA[edge];
+        }
+        int middle = unpack(first, from, path);
+        return unpack(second, middle, path);
+    }
+
+    private static class QueryState {
+        final SearchState forward;
+        final SearchState backward;
+        double best;
+        int meeting;
+
+        QueryState(int n) {
+            forward = new SearchState(n);
+            backward = new SearchState(n);
+        }
+
+        void reset() {
+            forward.reset();
+            backward.reset();
+            best = Double.MAX_VALUE;
+            meeting = -1;
+        }
+    }
+
+    private static class Builder {
+        private final CompactGraph graph;
+        private final int n;
+
+        private int edgeCount;
+        private int[] from;
+        private int[] to;
+        private double[] weight;
+        private int[] childA;
+        private int[] childB;
+
+        private final int[][] adjacency;
+        private final int[] degree;
+        private final boolean[] contracted;
+        private final int[] contractedNeighbours;
+        private final int[] rank;
+
+        private final double[] witnessDist;
+        private final ArrayList<Integer> witnessTouched;
+        private final NodeHeap witnessHeap;
+
+        Builder(CompactGraph graph) {
+            this.graph = graph;
+            n = graph.size();
+
+            int capacity = Math.max(16, 2 * graph.edgeCount());
+            from = new int[capacity];
+            to = new int[capacity];
+            weight = new double[capacity];
+            childA = new int[capacity];
+            childB = new int[capacity];
+
+            adjacency = new int[n][4];
+            degree = new int[n];
+            contracted = new boolean[n];
+            contractedNeighbours = new int[n];
+            rank = new int[n];
+
+            for (int u = 0; u < n; ++u) {
+                for (int e = graph.firstEdge(u); e < graph.endEdge(u); ++e) {
+                    if (graph.target(e) > u) {
+                        addEdge(u, graph.target(e), graph.weight(e), -1, -1);
+                    }
+                }
+            }
+
+            witnessDist = new double[n];
+            Arrays.fill(witnessDist, Double.MAX_VALUE);
+            witnessTouched = new ArrayList<>();
+            witnessHeap = new NodeHeap(64);
+        }
+
+        ContractionHierarchy build() {
+            long start = System.nanoTime();
+            int originalEdges = edgeCount;
+
+            PriorityQueue<long[]> queue = new PriorityQueue<>(
+                    Math.max(1, n), (a, b) -> Long.compare(a[0], b[0])
+            );
+            for (int v = 0; v < n; ++v) {
+                queue.add(new long[] { priority(v), v });
+            }
+
+            int nextRank = 0;
+            while (!queue.isEmpty()) {
+                int v = (int) queue.poll()[1];
+                long p = priority(v);
+                if (!queue.isEmpty() && p > queue.peek()[0]) {
+                    queue.add(new long[] { p, v });
+                    continue;
+                }
+                contract(v, false);
+                contracted[v] = true;
+                rank[v] = nextRank++;
+                forEachNeighbour(v, (u, e) -> ++contractedNeighbours[u]);
+            }
+
+            return new ContractionHierarchy(this, originalEdges, System.nanoTime() - start);
+        }
+
+        private long priority(int v) {
+            int shortcuts = contract(v, true);
+            int[] removed = { 0 };
+            forEachNeighbour(v, (u, e) -> ++removed[0]);
+            return shortcuts - removed[0] + contractedNeighbours[v];
+        }
+
+        // returns the number of shortcuts that contracting v requires; adds them unless simulating
+        private int contract(int v, boolean simulate) {
+            ArrayList<Integer> neighbourEdges = new ArrayList<>();
+            forEachNeighbour(v, (u, e) -> neighbourEdges.add(e));
+
+            int shortcuts = 0;
+            for (int i = 0; i < neighbourEdges.size(); ++i) {
+                int e1 = neighbourEdges.get(i);
+                int u = from[e1] ^ to[e1] ^ v;
+                double maxVia = -1;
+                for (int j = i + 1; j < neighbourEdges.size(); ++j) {
+                    maxVia = Math.max(maxVia, weight[e1] + weight[neighbourEdges.get(j)]);
+                }
+                if (maxVia < 0) {
+                    continue;
+                }
+
+                witnessSearch(u, v, maxVia);
+                for (int j = i + 1; j < neighbourEdges.size(); ++j) {
+                    int e2 = neighbourEdges.get(j);
+                    int w = from[e2] ^ to[e2] ^ v;
+                    double via = weight[e1] + weight[e2];
+                    if (witnessDist[w] <= via) {
+                        continue;
+                    }
+                    ++shortcuts;
+                    if (!simulate) {
+                        addShortcut(u, w, via, e1, e2);
+                    }
+                }
+            }
+            return shortcuts;
+        }
+
+        private void witnessSearch(int source, int excluded, double limit) {
+            for (int node: witnessTouched) {
+                witnessDist[node] = Double.MAX_VALUE;
+            }
+            witnessTouched.clear();
+            witnessHeap.clear();
+
+            witnessDist[source] = 0;
+            witnessTouched.add(source);
+            witnessHeap.push(source, 0);
+
+            int settled = 0;
+            while (!witnessHeap.isEmpty() && settled < WITNESS_SETTLE_LIMIT) {
+                int u = witnessHeap.peekNode();
+                double d = witnessHeap.peekKey();
+                witnessHeap.pop();
+                if (d > witnessDist[u]) {
+                    continue;
+                }
+                if (d > limit) {
+                    break;
+                }
+                ++settled;
+
+                for (int i = 0; i < degree[u]; ++i) {
+                    int e = adjacency[u][i];
+                    int w = from[e] ^ to[e] ^ u;
+                    if (w == excluded || contracted[w]) {
+                        continue;
+                    }
+                    double nd = d + weight[e];
+                    if (nd < witnessDist[w]) {
+                        if (witnessDist[w] == Double.MAX_VALUE) {
+                            witnessTouched.add(w);
+                        }
+                        witnessDist[w] = nd;
+                        witnessHeap.push(w, nd);
+                    }
+                }
+            }
+        }
+
+        private void addShortcut(int u, int w, double via, int e1, int e2) {
+            for (int i = 0; i < degree[u]; ++i) {
+                int e = adjacency[u][i];
+                if ((from[e] ^ to[e] ^ u) == w) {
+                    if (via < weight[e]) {
+                        weight[e] = via;
+                        childA[e] = from[e] == u ? e1 : e2;
+                        childB[e] = from[e] == u ? e2 : e1;
+                    }
+                    return;
+                }
+            }
+            addEdge(u, w, via, e1, e2);
+        }
+
+        private void addEdge(int u, int v, double w, int a, int b) {
+            if (edgeCount == from.length) {
+                int capacity = edgeCount * 2;
+                from = Arrays.copyOf(from, capacity);
+                to = Arrays.copyOf(to, capacity);
+                weight = Arrays.copyOf(weight, capacity);
+                childA = Arrays.copyOf(childA, capacity);
+                childB = Arrays.copyOf(childB, capacity);
+            }
+            int e = edgeCount++;
+            from[e] = u;
+            to[e] = v;
+            weight[e] = w;
+            childA[e] = a;
+            childB[e] = b;
+            link(u, e);
+            link(v, e);
+        }
+
+        private void link(int node, int edge) {
+            if (degree[node] == adjacency[node].length) {
+                adjacency[node] = Arrays.copyOf(adjacency[node], degree[node] * 2);
+            }
+            adjacency[node][degree[node]++] = edge;
+        }
+
+        private void forEachNeighbour(int v, NeighbourConsumer consumer) {
+            for (int i = 0; i < degree[v]; ++i) {
+                int e = adjacency[v][i];
+                int u = from[e] ^ to[e] ^ v;
+                if (!contracted[u]) {
+                    consumer.accept(u, e);
+                }
+            }
+        }
+
+        private interface NeighbourConsumer {
+            void accept(int node, int edge);
+        }
+    }
+
+    private ContractionHierarchy(Builder builder, int originalEdges, long buildTimeNs) {
+        int n = builder.n;
+        int m = builder.edgeCount;
+
+        this.graph = builder.graph;
+        this.edgeFrom = Arrays.copyOf(builder.from, m);
+        this.edgeTo = Arrays.copyOf(builder.to, m);
+        this.edgeChildA = Arrays.copyOf(builder.childA, m);
+        this.edgeChildB = Arrays.copyOf(builder.childB, m);
+        this.buildTimeNs = buildTimeNs;
+        this.shortcutCount = m - originalEdges;
+
+        upOffsets = new int[n + 1];
+        for (int e = 0; e < m; ++e) {
+            int lower = builder.rank[edgeFrom[e]] < builder.rank[edgeTo[e]] ? edgeFrom[e] : edgeTo[e];
+            ++upOffsets[lower + 1];
+        }
+        for (int v = 0; v < n; ++v) {
+            upOffsets[v + 1] += upOffsets[v];
+        }
+        upTargets = new int[m];
+        upWeights = new double[m];
+        upEdges = new int[m];
+        int[] fill = Arrays.copyOf(upOffsets, n);
+        for (int e = 0; e < m; ++e) {
+            boolean fromLower = builder.rank[edgeFrom[e]] < builder.rank[edgeTo[e]];
+            int lower = fromLower ? edgeFrom[e] : edgeTo[e];
+            int pos = fill[lower]++;
+            upTargets[pos] = fromLower ? edgeTo[e] : edgeFrom[e];
+            upWeights[pos] = builder.weight[e];
+            upEdges[pos] = e;
+        }
+
+        queryStates = new StatePool<>(() -> new QueryState(n));
+    }
+}
@@ -0,0 +1,24 @@
+import jade.core.AID;
+
+class Destination {
+    public enum Tag {
+        SOURCE, SINK
+    }
+
+    public final AID aid;
+    public final Tag tag;
+    public final MapModel.Node node;
+    // pick-up window of a source, drop-off window of a sink
+    public final TimeWindow window;
+
+    public Destination(AID aid, Tag tag, MapModel.Node node) {
+        this(aid, tag, node, TimeWindow.ANY);
+    }
+
+    public Destination(AID aid, Tag tag, MapModel.Node node, TimeWindow window) {
+        this.aid = aid;
+        this.tag = tag;
+        this.node = node;
+        this.window = window;
+    }
+}
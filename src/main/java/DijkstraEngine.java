@@ -0,0 +1,108 @@
+import java.util.*;
+
+public class DijkstraEngine implements RoutingEngine {
+
+    private final CompactGraph graph;
+    private final StatePool<SearchState> states;
+
+    public DijkstraEngine(CompactGraph graph) {
+        this.graph = graph;
+        this.states = new StatePool<>(() -> new SearchState(graph.size()));
+    }
+
+    @Override
+    public double getDistance(MapModel.Node source, MapModel.Node sink) {
+        int t = graph.indexOf(sink);
+        SearchState state = states.acquire();
+        try {
+            search(graph.indexOf(source), t, state);
+            return state.dist[t];
+        } finally {
+            states.release(state);
+        }
+    }
+
+    @Override
+    public List<MapModel.Node> getPath(MapModel.Node source, MapModel.Node sink) {
+        int s = graph.indexOf(source);
+        int t = graph.indexOf(sink);
+        SearchState state = states.acquire();
+        try {
+            search(s, t, state);
+            if (state.dist[t] == Double.MAX_VALUE) {
+                return null;
+            }
+
+            ArrayList<MapModel.Node> path = new ArrayList<>();
+            for (int v = t; v != s; v = state.parent[v]) {
+                path.add(graph.getNode(v));
+            }
+            path.add(source);
+            Collections.reverse(path);
+            return path;
+        } finally {
+            states.release(state);
+        }
+    }
+
+    private void search(int s, int t, SearchState state) {
+        state.reset();
+        state.relax(s, 0, -1);
+        while (!state.heap.isEmpty()) {
+            int u = state.heap.peekNode();
+            double d = state.heap.peekKey();
+            state.heap.pop();
+            if (d > state.dist[u]) {
+                continue;
+            }
+            if (u == t) {
+                break;
+            }
+            for (int e = graph.firstEdge(u); e < graph.endEdge(u); ++e) {
+                int v = graph.target(e);
+                double nd = d + graph.weight(e);
+                if (nd < state.dist[v]) {
+                    state.relax(v, nd, u);
+                }
+            }
+        }
+    }
+
+    public int countMismatches(RoutingEngine engine, int samples, long seed) {
+        Random rnd = new Random(seed);
+        int mismatches = 0;
+        for (int i = 0; i < samples; ++i) {
+            MapModel.Node source = graph.getNode(rnd.nextInt(graph.size()));
+            MapModel.Node sink = graph.getNode(rnd.nextInt(graph.size()));
+            double expected = getDistance(source, sink);
+            List<MapModel.Node> path = engine.getPath(source, sink);
+            if (!sameLength(engine.getDistance(source, sink), expected)
+                    || !isPath(path, source, sink, expected)) {
+                ++mismatches;
+            }
+        }
+        return mismatches;
+    }
+
+    private boolean isPath(List<MapModel.Node> path, MapModel.Node source, MapModel.Node sink, double length) {
+        if (path == null) {
+            return length == Double.MAX_VALUE;
+        }
+        if (path.get(0) != source || path.get(path.size() - 1) != sink) {
+            return false;
+        }
+        double weight = 0;
+        for (int i = 1; i < path.size(); ++i) {
+            int e = graph.findEdge(graph.indexOf(path.get(i - 1)), graph.indexOf(path.get(i)));
+            if (e < 0) {
+                return false;
+            }
+            weight += graph.weight(e);
+        }
+        return sameLength(weight, length);
+    }
+
+    private static boolean sameLength(double a, double b) {
+        return a == b || Math.abs(a - b) <= 1e-6 * Math.max(Math.abs(a), Math.abs(b));
+    }
+}
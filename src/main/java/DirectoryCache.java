@@ -0,0 +1,128 @@
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.domain.DFService;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.domain.FIPAException;
+import jade.lang.acl.ACLMessage;
+import jade.proto.SubscriptionInitiator;
+
+// Local copy of the DF entries for one service, shared by every agent of a container. One subscription of the
+// owning agent keeps it current: the DF's first notification carries every matching entry and later ones every
+// change, so lookups only search the DF before the first notification or after one could not be decoded
+public class DirectoryCache {
+
+    private final Agent owner;
+    private final DFAgentDescription template;
+    private final LinkedHashMap<AID, DFAgentDescription> entries;
+    private final Subscription subscription;
+    // set by a notification, cleared when one is lost; guarded by entries
+    private boolean synced;
+
+    private final LongAdder lookups;
+    private final LongAdder searches;
+    private final LongAdder notifications;
+    // subscribe and cancel requests sent to the DF
+    private final LongAdder subscriptionRequests;
+
+    public DirectoryCache(Agent owner, ServiceDescription service) {
+        this.owner = owner;
+        this.template = new DFAgentDescription();
+        this.template.addServices(service);
+        this.entries = new LinkedHashMap<>();
+        this.lookups = new LongAdder();
+        this.searches = new LongAdder();
+        this.notifications = new LongAdder();
+        this.subscriptionRequests = new LongAdder();
+        this.subscription = new Subscription();
+    }
+
+    // notifications are handled on the owner's thread
+    public void subscribe() {
+        subscriptionRequests.increment();
+        owner.addBehaviour(subscription);
+    }
+
+    public void unsubscribe() {
+        subscriptionRequests.increment();
+        subscription.cancel(owner.getDefaultDF(), true);
+    }
+
+    // called from any agent of the container; a search, if needed, blocks the calling agent only
+    public List<AID> lookup(Agent caller) throws FIPAException {
+        lookups.increment();
+        synchronized (entries) {
+            if (synced) {
+                return new ArrayList<>(entries.keySet());
+            }
+        }
+
+        searches.increment();
+        DFAgentDescription[] descriptions = DFService.search(caller, template);
+        synchronized (entries) {
+            // a notification that arrived during the search is newer than its result
+            if (!synced) {
+                entries.clear();
+                for (DFAgentDescription description: descriptions) {
+                    entries.put(description.getName(), description);
+                }
+            }
+            return new ArrayList<>(entries.keySet());
+        }
+    }
+
+    public long getLookupCount() {
+        return lookups.sum();
+    }
+
+    public long getSearchCount() {
+        return searches.sum();
+    }
+
+    public long getNotificationCount() {
+        return notifications.sum();
+    }
+
+    // a search is a request and a reply, so without the cache every lookup would cost two DF messages
+    @Override
+    public String toString() {
+        long lookups = getLookupCount();
+        long searches = getSearchCount();
+        long dfMessages = 2 * searches + subscriptionRequests.sum() + getNotificationCount();
+        return String.format(
+                "lookups=%d; df searches=%d; notifications=%d; df messages=%d instead of %d",
+                lookups, searches, getNotificationCount(), dfMessages, 2 * lookups
+        );
+    }
+
+    private class Subscription extends SubscriptionInitiator {
+
+        Subscription() {
+            super(owner, DFService.createSubscriptionMessage(owner, owner.getDefaultDF(), template, null));
+        }
+
+        @Override
+        protected void handleInform(ACLMessage inform) {
+            notifications.increment();
+            synchronized (entries) {
+                try {
+                    // an entry without services is a deregistration, anything else a registration or modification
+                    for (DFAgentDescription description: DFService.decodeNotification(inform.getContent())) {
+                        if (description.getAllServices().hasNext()) {
+                            entries.put(description.getName(), description);
+                        } else {
+                            entries.remove(description.getName());
+                        }
+                    }
+                    synced = true;
+                } catch (FIPAException e) {
+                    // lookups search the DF until the next notification rather than trust a copy that missed one
+                    synced = false;
+                }
+            }
+        }
+    }
+}
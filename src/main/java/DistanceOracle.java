@@ -0,0 +1,112 @@
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.*;
+
+public class DistanceOracle implements RoutingEngine {
+
+    private static final int MAX_NODES = 46340;
+
+    private final CompactGraph graph;
+    // n x n tables indexed source * n + sink, on the heap or mapped from a MapFile; -1 marks no path
+    private final FloatBuffer dist;
+    private final IntBuffer next;
+    private final long buildTimeNs;
+
+    public static DistanceOracle build(CompactGraph graph) {
+        long start = System.nanoTime();
+
+        int n = graph.size();
+        if (n > MAX_NODES) {
+            throw new IllegalArgumentException("Graph is too large for all-pairs oracle: " + n + " nodes");
+        }
+
+        float[] dist = new float[n * n];
+        int[] next = new int[n * n];
+        Arrays.fill(dist, -1);
+        Arrays.fill(next, -1);
+
+        // a full Dijkstra from every target fills one column: roads are two-way, so the search parent of v is
+        // the next hop from v to the target
+        SearchState state = new SearchState(n);
+        for (int t = 0; t < n; ++t) {
+            state.reset();
+            state.relax(t, 0, t);
+            while (!state.heap.isEmpty()) {
+                int u = state.heap.peekNode();
+                double d = state.heap.peekKey();
+                state.heap.pop();
+                if (d > state.dist[u]) {
+                    continue;
+                }
+                dist[u * n + t] = (float) d;
+                next[u * n + t] = state.parent[u];
+                for (int e = graph.firstEdge(u); e < graph.endEdge(u); ++e) {
+                    int v = graph.target(e);
+                    double nd = d + graph.weight(e);
+                    if (nd < state.dist[v]) {
+                        state.relax(v, nd, u);
+                    }
+                }
+            }
+        }
+
+        return new DistanceOracle(graph, FloatBuffer.wrap(dist), IntBuffer.wrap(next), System.nanoTime() - start);
+    }
+
+    // tables laid out elsewhere, e.g. mapped by MapFile
+    static DistanceOracle of(CompactGraph graph, FloatBuffer dist, IntBuffer next) {
+        return new DistanceOracle(graph, dist, next, 0);
+    }
+
+    @Override
+    public double getDistance(MapModel.Node source, MapModel.Node sink) {
+        float d = dist.get(graph.indexOf(source) * graph.size() + graph.indexOf(sink));
+        return d < 0 ? Double.MAX_VALUE : d;
+    }
+
+    @Override
+    public List<MapModel.Node> getPath(MapModel.Node source, MapModel.Node sink) {
+        int n = graph.size();
+        int s = graph.indexOf(source);
+        int t = graph.indexOf(sink);
+        if (dist.get(s * n + t) < 0) {
+            return null;
+        }
+
+        ArrayList<MapModel.Node> path = new ArrayList<>();
+        path.add(graph.getNode(s));
+        while (s != t) {
+            s = next.get(s * n + t);
+            path.add(graph.getNode(s));
+        }
+        return path;
+    }
+
+    public int size() {
+        return graph.size();
+    }
+
+    public long getBuildTimeMs() {
+        return buildTimeNs / 1000000;
+    }
+
+    public long getMemoryFootprint() {
+        return (long) dist.capacity() * Float.BYTES
+                + (long) next.capacity() * Integer.BYTES;
+    }
+
+    FloatBuffer getDistances() {
+        return dist.duplicate();
+    }
+
+    IntBuffer getNextHops() {
+        return next.duplicate();
+    }
+
+    private DistanceOracle(CompactGraph graph, FloatBuffer dist, IntBuffer next, long buildTimeNs) {
+        this.graph = graph;
+        this.dist = dist;
+        this.next = next;
+        this.buildTimeNs = buildTimeNs;
+    }
+}
@@ -0,0 +1,234 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+// Reads an undirected DOT graph such as MapModel.exportToDot writes into a compact-only MapModel. Node ids are
+// assigned in order of first appearance, which keeps the ids of an exported map; "district" and "type" node
+// attributes carry the district metadata (nodes without them join the center, district 1) and a "weight" edge
+// attribute the edge length (1 by default). Subgraphs are not supported
+public final class DotReader {
+
+    private final List<String> tokens;
+    private int pos;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private int[] districts = new int[16];
+    private MapModel.DistrictType[] types = new MapModel.DistrictType[16];
+    private int[] from = new int[16];
+    private int[] to = new int[16];
+    private float[] weights = new float[16];
+    private int edgeCount;
+    private boolean weighted;
+
+    private DotReader(List<String> tokens) {
+        this.tokens = tokens;
+    }
+
+    public static MapModel read(File file) throws IOException {
+        String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        return new DotReader(tokenize(text)).parse();
+    }
+
+    private MapModel parse() throws IOException {
+        if (peek("strict")) {
+            ++pos;
+        }
+        if (peek("digraph")) {
+            throw new IOException("Expected an undirected graph");
+        }
+        expect("graph");
+        if (!peek("{")) {
+            ++pos;
+        }
+        expect("{");
+
+        while (!peek("}")) {
+            if (peek(";")) {
+                ++pos;
+                continue;
+            }
+            if (peek("subgraph") || peek("{")) {
+                throw new IOException("Subgraphs are not supported");
+            }
+            if ((peek("node") || peek("edge") || peek("graph")) && peekAt(1, "[")) {
+                ++pos;
+                readAttributes();
+                continue;
+            }
+            if (peekAt(1, "=")) {
+                pos += 3;
+                continue;
+            }
+
+            List<String> chain = new ArrayList<>();
+            chain.add(next());
+            while (peek("--") || peek("->")) {
+                if (peek("->")) {
+                    throw new IOException("Directed edge '->' in an undirected graph");
+                }
+                ++pos;
+                chain.add(next());
+            }
+            Map<String, String> attributes = peek("[") ? readAttributes() : Collections.emptyMap();
+
+            if (chain.size() == 1) {
+                int id = nodeId(chain.get(0));
+                if (attributes.containsKey("district")) {
+                    districts[id] = Integer.parseInt(attributes.get("district"));
+                }
+                if (attributes.containsKey("type")) {
+                    types[id] = MapModel.DistrictType.valueOf(attributes.get("type"));
+                }
+            } else {
+                float weight = 1.0f;
+                if (attributes.containsKey("weight")) {
+                    weight = parseWeight(attributes.get("weight"));
+                    weighted = true;
+                }
+                for (int i = 1; i < chain.size(); ++i) {
+                    addEdge(nodeId(chain.get(i - 1)), nodeId(chain.get(i)), weight);
+                }
+            }
+        }
+
+        MapModel.Node[] nodes = new MapModel.Node[ids.size()];
+        for (int i = 0; i < nodes.length; ++i) {
+            nodes[i] = new MapModel.Node(i, districts[i], types[i]);
+        }
+        return MapModel.fromCompactGraph(
+                CompactGraph.fromEdges(nodes, from, to, weighted ? weights : null, edgeCount)
+        );
+    }
+
+    // negative or NaN lengths would silently break every routing engine, so they are rejected like the importer does
+    private static float parseWeight(String value) throws IOException {
+        float weight;
+        try {
+            weight = Float.parseFloat(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("Bad edge weight '" + value + "' in DOT input");
+        }
+        if (!(weight >= 0) || Float.isInfinite(weight)) {
+            throw new IOException("Bad edge weight '" + value + "' in DOT input");
+        }
+        return weight;
+    }
+
+    private int nodeId(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        id = ids.size();
+        ids.put(name, id);
+        if (id == districts.length) {
+            districts = Arrays.copyOf(districts, 2 * id);
+            types = Arrays.copyOf(types, 2 * id);
+        }
+        districts[id] = 1;
+        types[id] = MapModel.DistrictType.Center;
+        return id;
+    }
+
+    private void addEdge(int u, int v, float weight) {
+        if (edgeCount == from.length) {
+            from = Arrays.copyOf(from, 2 * edgeCount);
+            to = Arrays.copyOf(to, 2 * edgeCount);
+            weights = Arrays.copyOf(weights, 2 * edgeCount);
+        }
+        from[edgeCount] = u;
+        to[edgeCount] = v;
+        weights[edgeCount] = weight;
+        ++edgeCount;
+    }
+
+    // [ key = value, key = value; ... ]
+    private Map<String, String> readAttributes() throws IOException {
+        expect("[");
+        Map<String, String> attributes = new HashMap<>();
+        while (!peek("]")) {
+            if (peek(",") || peek(";")) {
+                ++pos;
+                continue;
+            }
+            String key = next();
+            expect("=");
+            attributes.put(key, next());
+        }
+        ++pos;
+        return attributes;
+    }
+
+    private boolean peek(String token) {
+        return peekAt(0, token);
+    }
+
+    private boolean peekAt(int offset, String token) {
+        return pos + offset < tokens.size() && tokens.get(pos + offset).equals(token);
+    }
+
+    private String next() throws IOException {
+        if (pos == tokens.size()) {
+            throw new IOException("Unexpected end of DOT input");
+        }
+        return tokens.get(pos++);
+    }
+
+    private void expect(String token) throws IOException {
+        String actual = next();
+        if (!actual.equals(token)) {
+            throw new IOException("Expected '" + token + "' in DOT input, got '" + actual + "'");
+        }
+    }
+
+    // ids, numerals and quoted strings (without quotes) plus the punctuation DOT uses; comments are dropped
+    private static List<String> tokenize(String text) throws IOException {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                ++i;
+            } else if (c == '#' || text.startsWith("//", i)) {
+                while (i < text.length() && text.charAt(i) != '\n') {
+                    ++i;
+                }
+            } else if (text.startsWith("/*", i)) {
+                int end = text.indexOf("*/", i + 2);
+                i = end < 0 ? text.length() : end + 2;
+            } else if (text.startsWith("--", i) || text.startsWith("->", i)) {
+                tokens.add(text.substring(i, i + 2));
+                i += 2;
+            } else if ("{}[]=;,".indexOf(c) >= 0) {
+                tokens.add(String.valueOf(c));
+                ++i;
+            } else if (c == '"') {
+                StringBuilder value = new StringBuilder();
+                for (++i; i < text.length() && text.charAt(i) != '"'; ++i) {
+                    if (text.charAt(i) == '\\' && i + 1 < text.length()) {
+                        ++i;
+                    }
+                    value.append(text.charAt(i));
+                }
+                if (i == text.length()) {
+                    throw new IOException("Unterminated string in DOT input");
+                }
+                tokens.add(value.toString());
+                ++i;
+            } else {
+                int start = i;
+                while (i < text.length() && (Character.isLetterOrDigit(text.charAt(i))
+                        || text.charAt(i) == '_' || text.charAt(i) == '.'
+                        || (text.charAt(i) == '-' && !text.startsWith("--", i) && !text.startsWith("->", i)))) {
+                    ++i;
+                }
+                if (i == start) {
+                    throw new IOException("Unexpected character '" + c + "' in DOT input");
+                }
+                tokens.add(text.substring(start, i));
+            }
+        }
+        return tokens;
+    }
+}
@@ -1,6 +1,6 @@
 import jade.core.AID;
 
-import java.util.ArrayList;
+import java.util.Set;
 
 public interface Driver {
 
@@ -8,8 +8,11 @@ public interface Driver {
 
     double getCurrentIncome();
 
+    Plan getCurrentPlan();
+
     void acceptCurrentRoute();
-    void quitDriving();
+    // riders in carried were bundled into the new driver's route and keep their seat, the rest lose it
+    void quitDriving(Set<AID> carried);
 
     void rememberCurrentRoute();
     boolean hasCurrentRouteChanged();
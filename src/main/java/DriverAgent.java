@@ -1,12 +1,11 @@
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.LongAdder;
 
-import jade.core.behaviours.TickerBehaviour;
+import jade.core.behaviours.SimpleBehaviour;
 import jade.core.behaviours.WrapperBehaviour;
 import jade.domain.DFService;
 import jade.domain.FIPAAgentManagement.DFAgentDescription;
 import jade.domain.FIPANames;
-import org.json.*;
 
 import jade.core.*;
 import jade.lang.acl.*;
@@ -15,153 +14,113 @@ import jade.proto.ContractNetResponder;
 
 public class DriverAgent extends Agent implements Driver {
 
-    private static class Destination {
-        public enum Tag {
-            SOURCE, SINK
-        }
-
-        public final AID aid;
-        public final Tag tag;
-        public final MapModel.Node node;
-
-        public Destination(AID aid, Tag tag, MapModel.Node node) {
-            this.aid = aid;
-            this.tag = tag;
-            this.node = node;
-        }
-    }
-
-    private static class PassengerPlan {
-        public final AID aid;
-        public final MapModel.Node from;
-        public final MapModel.Node to;
-        public final double payment;
-
-        public PassengerPlan(AID aid, MapModel.Node from, MapModel.Node to, double payment) {
-            this.aid = aid;
-            this.from = from;
-            this.to = to;
-            this.payment = payment;
-        }
-
-        public JSONObject toJSON() {
-            return new JSONObject()
-                    .put("name", aid.getLocalName())
-                    .put("from", from.id)
-                    .put("to", to.id)
-                    .put("payment", payment);
-        }
-    }
-
-    private static class Plan {
-        private final MapModel.Route route;
-        private final Set<Destination> destinations;
-        private final Map<AID, Double> payments;
-        private final double totalPayment;
-
-        public Plan(
-                MapModel.Route route,
-                Set<Destination> destinations,
-                Map<AID, Double> payments,
-                double payment
-        ) {
-            this.route = route;
-            this.destinations = destinations;
-            this.payments = payments;
-            this.totalPayment = payment;
-        }
-
-        public double getIncome() {
-            return totalPayment - route.getCost();
-        }
-
-        public Set<AID> getPassengers() {
-            return destinations.stream()
-                    .filter(dst -> dst.tag == Destination.Tag.SOURCE)
-                    .map(dst -> dst.aid)
-                    .collect(Collectors.toSet());
-        }
-
-        public List<PassengerPlan> getPassengerPlans() {
-            ArrayList<PassengerPlan> plans = new ArrayList<>();
-            for (AID aid: getPassengers()) {
-                MapModel.Node from = destinations.stream()
-                        .filter(dst -> dst.aid == aid && dst.tag == Destination.Tag.SOURCE)
-                        .map(dst -> dst.node)
-                        .collect(Collectors.toList())
-                        .get(0);
-                MapModel.Node to = destinations.stream()
-                        .filter(dst -> dst.aid == aid && dst.tag == Destination.Tag.SINK)
-                        .map(dst -> dst.node)
-                        .collect(Collectors.toList())
-                        .get(0);
-                double payment = payments.get(aid);
-                plans.add(new PassengerPlan(aid, from, to, payment));
-            }
-            return plans;
-        }
-    }
-
     private final int id;
     private MapModel map;
     private Plan newPlan;
     private Plan prevPlan;
     private Plan currPlan;
     private MapModel.Intention intention;
+    private RoutePlanner planner;
+    private CandidateIndex candidates;
+    private DirectoryCache loggers;
     private NegotiationBehavior negotiationBehavior;
-    private CheckProfitBehaviour checkBehaviour;
+    private SearchScheduler scheduler;
     private MapModel.Route initialRoute;
     private Set<AID> blackList;
     private boolean checkRunning;
+    // accepted someone else's proposal and waits for its confirm, so it cannot become a driver meanwhile
+    private boolean awaitingConfirm;
     private int attemptCnt;
     private boolean isDone;
 
-    private static final int CAPACITY = 4;
-    private static final int MAX_ATTEMPT_COUNT = 2;
-    private static final long CHECK_PROFIT_PERIOD_MS = 3 * 1000;
-    private static final double DRIVER_PREMIUM = 0;
-
-    private static int next_id = 1;
-
-    public DriverAgent(MapModel.Intention intention, MapModel map) {
-        Set<Destination> destinations = new HashSet<>();
+    static final int CAPACITY = 4;
+    static final int MAX_ATTEMPT_COUNT = 2;
+    static final long CHECK_PROFIT_PERIOD_MS = 3 * 1000;
+    static final long SEARCH_MIN_BACKOFF_MS = 250;
+    static final long SEARCH_MAX_BACKOFF_MS = 8 * 1000;
+    static final double DRIVER_PREMIUM = 0;
+    static final int EXACT_PLAN_MAX_STOPS = 10;
+    static final long EXACT_PLAN_BUDGET_NS = 50 * 1000 * 1000;
+    static final boolean BUNDLE_RIDERS = true;
+    // JsonCodec.INSTANCE makes the messages readable in the sniffer
+    static final ContentCodec CONTENT_CODEC = BinaryCodec.INSTANCE;
+
+    // a whole round: cfps, waiting for the answers, accepting and waiting for the confirm
+    private static final LatencyHistogram SEARCH_LATENCY = Metrics.histogram("search.round");
+
+    public DriverAgent(
+            int id, MapModel.Intention intention, MapModel map, CandidateIndex candidates, DirectoryCache loggers
+    ) {
+        List<Destination> destinations = new ArrayList<>();
         Map<AID, Double> payments = new HashMap<>();
         this.initialRoute = map.getRoute(intention.from, intention.to);
-        this.id = next_id++;
+        this.id = id;
         this.intention = intention;
         this.map = map;
+        this.candidates = candidates;
+        this.loggers = loggers;
+        this.planner = createPlanner(map, CAPACITY);
         this.newPlan = null;
         this.prevPlan = null;
         this.currPlan = new Plan(initialRoute, destinations, payments, 0);
         this.negotiationBehavior = new NegotiationBehavior(this);
-        this.checkBehaviour = new CheckProfitBehaviour();
+        this.scheduler = new SearchScheduler();
         this.blackList = new HashSet<>();
         this.checkRunning = false;
         this.attemptCnt = 0;
         this.isDone = false;
 
-        System.out.printf(
-                "%s - initial route: %s; cost = %f\n",
-                toString(),
-                initialRoute.toString(),
-                initialRoute.getCost()
-        );
+        if (Log.isEnabled(Log.Level.DEBUG)) {
+            Log.debug(
+                    "%s - initial route: %s; cost = %f\n",
+                    toString(),
+                    initialRoute.toString(),
+                    initialRoute.getCost()
+            );
+        }
+    }
+
+    static String nameOf(int id) {
+        return "Driver" + Integer.toString(id);
     }
 
     @Override
     public String toString() {
-        return "Driver" + Integer.toString(id);
+        return nameOf(id);
     }
 
     protected void setup() {
-        System.out.printf(
+        Log.debug(
                 "Starting Agent %s\n",
                 getLocalName()
         );
 
         register();
         addBehaviour(negotiationBehavior);
-        addBehaviour(checkBehaviour);
+        addBehaviour(scheduler);
+    }
+
+    boolean isDone() {
+        return isDone;
+    }
+
+    void setAwaitingConfirm(boolean awaitingConfirm) {
+        this.awaitingConfirm = awaitingConfirm;
+    }
+
+    DirectoryCache getLoggingDirectory() {
+        return loggers;
+    }
+
+    // the planner every driver quotes with; the simulation uses it too, so both measure the same plans
+    static RoutePlanner createPlanner(MapModel map, int capacity) {
+        return new ExactPlanner(
+                map, capacity, EXACT_PLAN_MAX_STOPS, EXACT_PLAN_BUDGET_NS, new InsertionPlanner(map, capacity)
+        );
+    }
+
+    RoutePlanner getPlanner() {
+        return planner;
     }
 
     @Override
@@ -174,6 +133,11 @@ public class DriverAgent extends Agent implements Driver {
         return currPlan.getIncome();
     }
 
+    @Override
+    public Plan getCurrentPlan() {
+        return currPlan;
+    }
+
     @Override
     public void incAttemptCount() {
         ++attemptCnt;
@@ -191,7 +155,7 @@ public class DriverAgent extends Agent implements Driver {
 
     @Override
     public void acceptCurrentRoute() {
-        System.out.printf(
+        Log.debug(
                 "%s - accepts plan and sends confirm notifications to waiting passengers\n",
                 getLocalName()
         );
@@ -209,26 +173,17 @@ public class DriverAgent extends Agent implements Driver {
 
         try {
             ACLMessage notification = new ACLMessage(ACLMessage.INFORM);
-            List<String> route = currPlan.route.getNodes().stream()
-                    .map(MapModel.Node::toString)
-                    .collect(Collectors.toList());
-            List<JSONObject> passengerPlans = currPlan.getPassengerPlans().stream()
-                    .map(PassengerPlan::toJSON)
-                    .collect(Collectors.toList());
-            notification.setContent(new JSONObject()
-                    .put("sender-type", "driver")
-                    .put("cost", currPlan.route.getCost())
-                    .put("income", currPlan.getIncome())
-                    .put("route", route)
-                    .put("passengers", passengerPlans)
-                    .toString()
-            );
-
-            DFAgentDescription template = new DFAgentDescription();
-            template.addServices(CarpoolAgent.LOGGING_SERVICE);
-            DFAgentDescription[] descriptions = DFService.search(this, template);
-            for (DFAgentDescription description: descriptions) {
-                notification.addReceiver(description.getName());
+            CONTENT_CODEC.writeReport(notification, new ContentCodec.Report(
+                    ContentCodec.Report.DRIVER,
+                    initialRoute.getCost(),
+                    currPlan.getRoute().getCost(),
+                    currPlan.getIncome(),
+                    currPlan.getRoute().getNodes(),
+                    currPlan.getPassengerPlans()
+            ));
+
+            for (AID logger: loggers.lookup(this)) {
+                notification.addReceiver(logger);
             }
 
             send(notification);
@@ -239,16 +194,18 @@ public class DriverAgent extends Agent implements Driver {
     }
 
     @Override
-    public void quitDriving() {
-        System.out.printf("%s - quits driving and becomes a passenger\n", getLocalName());
+    public void quitDriving(Set<AID> carried) {
+        Log.debug("%s - quits driving and becomes a passenger\n", getLocalName());
 
         deregister();
         isDone = true;
 
         for (AID aid: currPlan.getPassengers()) {
-            ACLMessage disconfirm = new ACLMessage(ACLMessage.DISCONFIRM);
-            disconfirm.addReceiver(aid);
-            send(disconfirm);
+            ACLMessage notification = new ACLMessage(
+                    carried.contains(aid) ? ACLMessage.CONFIRM : ACLMessage.DISCONFIRM
+            );
+            notification.addReceiver(aid);
+            send(notification);
         }
     }
 
@@ -266,8 +223,29 @@ public class DriverAgent extends Agent implements Driver {
         try {
             DFAgentDescription dfd = new DFAgentDescription();
             dfd.setName(getAID());
-            dfd.addServices(CarpoolAgent.DRIVER_SERVICE);
+            dfd.addServices(CarpoolAgent.describeDriver(intention));
             DFService.register(this, dfd);
+            candidates.register(getAID(), intention);
+        } catch (Exception e) {
+            System.out.println("Error: " + e);
+            e.printStackTrace(System.out);
+            System.exit(1);
+        }
+    }
+
+    // withdraws the service entry while the agent cannot answer cfps, so that the mirrors of
+    // other containers drop it as the local index does, and publishes it again afterwards
+    void setListed(boolean listed) {
+        try {
+            DFAgentDescription dfd = new DFAgentDescription();
+            dfd.setName(getAID());
+            if (listed) {
+                dfd.addServices(CarpoolAgent.describeDriver(intention));
+                candidates.register(getAID(), intention);
+            } else {
+                candidates.deregister(getAID());
+            }
+            DFService.modify(this, dfd);
         } catch (Exception e) {
             System.out.println("Error: " + e);
             e.printStackTrace(System.out);
@@ -276,6 +254,7 @@ public class DriverAgent extends Agent implements Driver {
     }
 
     private void deregister() {
+        candidates.deregister(getAID());
         try {
             DFService.deregister(this);
         } catch (Exception e) {
@@ -285,50 +264,135 @@ public class DriverAgent extends Agent implements Driver {
         }
     }
 
-    private class CheckProfitBehaviour extends TickerBehaviour {
+    // searches as soon as something relevant changes (own plan, a reject, a newly available driver)
+    // and backs off exponentially while searches find nothing new
+    private class SearchScheduler extends SimpleBehaviour {
+        // agents start and register one by one, possibly in other containers, so the first search waits
+        // for the platform to fill up instead of finding an empty index and driving alone
+        private long firstSearchAt;
+        private long backoffMs = SEARCH_MIN_BACKOFF_MS;
+        private long nextSearchAt;
+        private long seenRegistrations;
+        private Plan planAtSearch;
+        private boolean triggered;
+
+        @Override
+        public void onStart() {
+            firstSearchAt = System.currentTimeMillis()
+                    + CHECK_PROFIT_PERIOD_MS + new Random().nextInt((int) SEARCH_MIN_BACKOFF_MS);
+            nextSearchAt = firstSearchAt;
+        }
+
+        void trigger() {
+            triggered = true;
+            backoffMs = SEARCH_MIN_BACKOFF_MS;
+            nextSearchAt = System.currentTimeMillis();
+            restart();
+        }
 
-        CheckProfitBehaviour() {
-            super(DriverAgent.this, CHECK_PROFIT_PERIOD_MS + new Random().nextInt(1000));
+        private void searchFinished() {
+            if (triggered || currPlan != planAtSearch) {
+                backoffMs = SEARCH_MIN_BACKOFF_MS;
+            } else {
+                backoffMs = Math.min(2 * backoffMs, SEARCH_MAX_BACKOFF_MS);
+            }
+            nextSearchAt = System.currentTimeMillis() + backoffMs;
+            restart();
         }
 
         @Override
-        protected void onTick() {
-            if (isDone) {
-                removeBehaviour(this);
+        public void action() {
+            if (isDone || checkRunning) {
+                block();
                 return;
             }
-            if (checkRunning) {
+
+            long registrations = candidates.getRegistrationCount();
+            if (registrations != seenRegistrations) {
+                seenRegistrations = registrations;
+                backoffMs = SEARCH_MIN_BACKOFF_MS;
+                nextSearchAt = Math.max(
+                        firstSearchAt, Math.min(nextSearchAt, System.currentTimeMillis() + SEARCH_MIN_BACKOFF_MS)
+                );
+            }
+
+            long wait = nextSearchAt - System.currentTimeMillis();
+            if (wait > 0) {
+                block(wait);
                 return;
             }
+
             if (attemptCnt == MAX_ATTEMPT_COUNT) {
                 acceptCurrentRoute();
                 return;
             }
             checkRunning = true;
+            triggered = false;
+            planAtSearch = currPlan;
 
-            addBehaviour(new WrapperBehaviour(new DriverSearchBehaviour(DriverAgent.this, intention)) {
+            long start = Metrics.start();
+            addBehaviour(new WrapperBehaviour(new DriverSearchBehaviour(DriverAgent.this, intention, candidates)) {
                 @Override
                 public int onEnd() {
+                    SEARCH_LATENCY.recordSince(start);
                     checkRunning = false;
+                    awaitingConfirm = false;
+                    searchFinished();
                     return getWrappedBehaviour().onEnd();
                 }
             });
         }
+
+        @Override
+        public boolean done() {
+            return isDone;
+        }
     }
 
     private static class NegotiationBehavior extends ContractNetResponder {
 
+        private static final LatencyHistogram CFP_LATENCY = Metrics.histogram("negotiation.handleCfp");
+        private static final LongAdder CFPS = Metrics.counter("negotiation.cfp");
+        private static final LongAdder PROPOSES = Metrics.counter("negotiation.propose");
+        private static final LongAdder REFUSES = Metrics.counter("negotiation.refuse");
+
+        private final LongAdder agentCfps;
+        private final LongAdder agentProposes;
+        private final LongAdder agentRefuses;
+
         NegotiationBehavior(DriverAgent agent) {
             super(agent, createMessageTemplate(FIPANames.InteractionProtocol.FIPA_CONTRACT_NET));
+            // constructed before the agent is named
+            String prefix = "agent." + nameOf(agent.id) + ".";
+            this.agentCfps = Metrics.counter(prefix + "cfp");
+            this.agentProposes = Metrics.counter(prefix + "propose");
+            this.agentRefuses = Metrics.counter(prefix + "refuse");
         }
 
         @Override
         protected ACLMessage handleCfp(ACLMessage cfp) {
+            long start = Metrics.start();
+            ACLMessage reply = answerCfp(cfp);
+            CFP_LATENCY.recordSince(start);
+
+            Metrics.increment(CFPS);
+            Metrics.increment(agentCfps);
+            if (reply.getPerformative() == ACLMessage.PROPOSE) {
+                Metrics.increment(PROPOSES);
+                Metrics.increment(agentProposes);
+            } else {
+                Metrics.increment(REFUSES);
+                Metrics.increment(agentRefuses);
+            }
+            return reply;
+        }
+
+        private ACLMessage answerCfp(ACLMessage cfp) {
             AID sender = cfp.getSender();
             DriverAgent agent = (DriverAgent) getAgent();
 
             if (agent.isDone) {
-                System.out.printf(
+                Log.trace(
                         "%s - receive cfp from %s but it is no longer provides service\n",
                         getAgent().getLocalName(),
                         sender.getLocalName()
@@ -336,97 +400,88 @@ public class DriverAgent extends Agent implements Driver {
 
                 ACLMessage refuse = cfp.createReply();
                 refuse.setPerformative(ACLMessage.REFUSE);
-                refuse.setContent(new JSONObject()
-                        .put("reason", "busy")
-                        .toString()
-                );
+                CONTENT_CODEC.writeRefusal(refuse, "busy");
                 return refuse;
             }
 
-            JSONObject content = new JSONObject(cfp.getContent());
-            MapModel.Node from = MapModel.Node.getNodeByID(content.getInt("from"));
-            MapModel.Node to = MapModel.Node.getNodeByID(content.getInt("to"));
+            ContentCodec.Cfp content;
+            try {
+                content = ContentCodec.forMessage(cfp).readCfp(cfp, agent.map);
+            } catch (IllegalArgumentException e) {
+                Log.debug(
+                        "%s - cannot read cfp from %s: %s\n",
+                        getAgent().getLocalName(),
+                        sender.getLocalName(),
+                        e.getMessage()
+                );
+                ACLMessage notUnderstood = cfp.createReply();
+                notUnderstood.setPerformative(ACLMessage.NOT_UNDERSTOOD);
+                CONTENT_CODEC.writeRefusal(notUnderstood, e.getMessage());
+                return notUnderstood;
+            }
+            MapModel.Intention trip = content.intention;
+            List<PassengerPlan> riders = content.riders;
 
-            System.out.printf(
-                    "%s - receive cfp from %s: from=%d; to=%d\n",
+            Log.trace(
+                    "%s - receive cfp from %s: from=%d; to=%d; riders=%d\n",
                     getAgent().getLocalName(),
                     sender.getLocalName(),
-                    from.id, to.id
+                    trip.from.id, trip.to.id, riders.size()
             );
 
-            HashSet<Destination> newDestinations = new HashSet<>(agent.currPlan.destinations);
-            newDestinations.add(new Destination(sender, Destination.Tag.SOURCE, from));
-            newDestinations.add(new Destination(sender, Destination.Tag.SINK, to));
+            Quote quote = Quote.priceBundle(
+                    agent.map, agent.planner, agent.intention, agent.currPlan,
+                    sender, trip, riders, DRIVER_PREMIUM
+            );
 
-            Map<AID, MapModel.Route> routes = new HashMap<>();
-            for (Destination dst: newDestinations) {
-                if (dst.tag == Destination.Tag.SOURCE) {
-                    routes.put(dst.aid, agent.map.initRoute(dst.node));
-                }
+            if (quote == null) {
+                ACLMessage refuse = cfp.createReply();
+                refuse.setPerformative(ACLMessage.REFUSE);
+                CONTENT_CODEC.writeRefusal(refuse, "unprofitable");
+                return refuse;
             }
 
-            MapModel.Route vehicleRoute = computeRoute(
-                    (Set<Destination>) newDestinations.clone(),
-                    routes
-            );
-
-            MapModel.Route passengerRoute = routes.get(sender);
-//            double passengerPayment = Math.max(
-//                    Math.abs(agent.currPlan.route.getCost() - vehicleRoute.getCost()) + DRIVER_PREMIUM,
-//                    passengerRoute.getCost()
-//            );
-            double passengerPayment =
-                    Math.abs(agent.currPlan.route.getCost() - vehicleRoute.getCost()) + DRIVER_PREMIUM;
-            Map<AID, Double> newPayments = new HashMap<>(agent.currPlan.payments);
-            newPayments.put(sender, passengerPayment);
-            double totalPayment = agent.currPlan.totalPayment + passengerPayment;
-
-            Plan newPlan = new Plan(vehicleRoute, newDestinations, newPayments, totalPayment);
-
-            System.out.printf(
-                    "%s - builds a route for %s\n" +
-                    "    full route: %s\n" +
-                    "    passenger route: %s\n" +
-                    "    driver income = %f\n" +
-                    "    passenger payment = %f\n",
-                    getAgent().getLocalName(),
-                    sender.getLocalName(),
-                    vehicleRoute.toString(),
-                    passengerRoute.toString(),
-                    newPlan.getIncome(), passengerPayment
-            );
+            // routes are only expanded to nodes when someone reads them
+            if (Log.isEnabled(Log.Level.TRACE)) {
+                Log.trace(
+                        "%s - builds a route for %s\n" +
+                        "    full route: %s\n" +
+                        "    passenger route: %s\n" +
+                        "    driver income = %f\n" +
+                        "    passenger payment = %f\n",
+                        getAgent().getLocalName(),
+                        sender.getLocalName(),
+                        quote.plan.getRoute().toString(),
+                        quote.getPassengerRoute().toString(),
+                        quote.plan.getIncome(), quote.payment
+                );
+            }
 
-            if (newPlan.getIncome() >= agent.currPlan.getIncome()) {
-                System.out.println(String.format(
-                        "%s - proposes route for %s",
+            if (quote.isProfitable(agent.currPlan)) {
+                Log.trace(
+                        "%s - proposes route for %s\n",
                         getAgent().getLocalName(),
                         sender.getLocalName()
-                ));
+                );
 
                 ACLMessage propose = cfp.createReply();
                 propose.setPerformative(ACLMessage.PROPOSE);
-                propose.setContent(new JSONObject()
-                        .put("payment", passengerPayment)
-                        .toString()
-                );
-                agent.newPlan = newPlan;
+                CONTENT_CODEC.writeProposal(propose, quote.payment);
+                agent.newPlan = quote.plan;
 
                 agent.blackList.add(cfp.getSender());
 
                 return propose;
             } else {
-                System.out.println(String.format(
-                        "%s - refuses proposal from %s",
+                Log.trace(
+                        "%s - refuses proposal from %s\n",
                         getAgent().getLocalName(),
                         sender.getLocalName()
-                ));
+                );
 
                 ACLMessage refuse = cfp.createReply();
                 refuse.setPerformative(ACLMessage.REFUSE);
-                refuse.setContent(new JSONObject()
-                        .put("reason", "unprofitable")
-                        .toString()
-                );
+                CONTENT_CODEC.writeRefusal(refuse, "unprofitable");
                 return refuse;
             }
         }
@@ -437,8 +492,9 @@ public class DriverAgent extends Agent implements Driver {
         ) {
             DriverAgent agent = (DriverAgent) getAgent();
 
-            if (agent.isDone) {
-                System.out.printf(
+            // two drivers accepting each other's proposals at once would both wait for a confirm forever
+            if (agent.isDone || agent.awaitingConfirm) {
+                Log.trace(
                         "%s - receives accept from %s and sends failure\n",
                         getAgent().getLocalName(),
                         accept.getSender().getLocalName()
@@ -449,7 +505,7 @@ public class DriverAgent extends Agent implements Driver {
                 return failure;
             }
 
-            System.out.printf(
+            Log.trace(
                     "%s - receives accept from %s and sends inform\n",
                     getAgent().getLocalName(),
                     accept.getSender().getLocalName()
@@ -457,6 +513,7 @@ public class DriverAgent extends Agent implements Driver {
 
             agent.currPlan = agent.newPlan;
             agent.newPlan = null;
+            agent.scheduler.trigger();
 
             ACLMessage inform = accept.createReply();
             inform.setPerformative(ACLMessage.INFORM);
@@ -467,7 +524,7 @@ public class DriverAgent extends Agent implements Driver {
         protected void handleRejectProposal(
                 ACLMessage cfp, ACLMessage propose, ACLMessage reject
         ) {
-            System.out.printf(
+            Log.trace(
                     "%s - receives reject from %s\n",
                     getAgent().getLocalName(),
                     reject.getSender().getLocalName()
@@ -476,57 +533,7 @@ public class DriverAgent extends Agent implements Driver {
             DriverAgent agent = (DriverAgent) getAgent();
             agent.newPlan = null;
             agent.blackList.remove(reject.getSender());
-        }
-
-        private MapModel.Route computeRoute(
-                Set<Destination> destinations,
-                Map<AID, MapModel.Route> routes
-        ) {
-            Set<AID> onBoard = new HashSet<>();
-
-            DriverAgent agent = (DriverAgent) getAgent();
-            MapModel.Node curr = agent.intention.from;
-            MapModel.Route vehicleRoute = agent.map.initRoute(curr);
-
-            while (!destinations.isEmpty()) {
-                MapModel.Route minRoute = agent.map.INFINITE_ROUTE;
-                Destination nextDestination = null;
-
-                for (Destination destination : destinations) {
-                    if ((destination.tag == Destination.Tag.SOURCE && onBoard.size() < CAPACITY) ||
-                            (destination.tag == Destination.Tag.SINK && onBoard.contains(destination.aid))) {
-                        MapModel.Route route = agent.map.getRoute(curr, destination.node);
-                        if (route.getLength() < minRoute.getLength()) {
-                            minRoute = route;
-                            nextDestination = destination;
-                        }
-                    }
-                }
-
-                destinations.remove(nextDestination);
-
-                for (AID aid : onBoard) {
-                    routes.get(aid).join(minRoute);
-                }
-                vehicleRoute.join(minRoute);
-
-                if (nextDestination.tag == Destination.Tag.SOURCE) {
-                    routes.put(nextDestination.aid, agent.map.initRoute(nextDestination.node));
-                    onBoard.add(nextDestination.aid);
-                } else if (nextDestination.tag == Destination.Tag.SINK) {
-                    onBoard.remove(nextDestination.aid);
-                }
-
-                curr = nextDestination.node;
-            }
-
-            MapModel.Route lastRoute = agent.map.getRoute(curr, agent.intention.to);
-            for (AID aid : onBoard) {
-                routes.get(aid).join(lastRoute);
-            }
-            vehicleRoute.join(lastRoute);
-
-            return vehicleRoute;
+            agent.scheduler.trigger();
         }
     }
 }
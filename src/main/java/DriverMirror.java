@@ -0,0 +1,76 @@
+import java.util.Iterator;
+
+import jade.core.Agent;
+import jade.domain.DFService;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.Property;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.domain.FIPAException;
+import jade.lang.acl.ACLMessage;
+import jade.proto.SubscriptionInitiator;
+
+// Keeps the drivers of other containers in the local candidate index, following their DF registrations;
+// drivers of the own container register in the index themselves and are ignored here
+public class DriverMirror extends SubscriptionInitiator {
+
+    private final MapModel map;
+    private final CandidateIndex candidates;
+    private final Partition partition;
+
+    public DriverMirror(Agent agent, MapModel map, CandidateIndex candidates, Partition partition) {
+        super(agent, DFService.createSubscriptionMessage(agent, agent.getDefaultDF(), template(), null));
+        this.map = map;
+        this.candidates = candidates;
+        this.partition = partition;
+    }
+
+    private static DFAgentDescription template() {
+        DFAgentDescription template = new DFAgentDescription();
+        template.addServices(CarpoolAgent.DRIVER_SERVICE);
+        return template;
+    }
+
+    @Override
+    protected void handleInform(ACLMessage inform) {
+        try {
+            for (DFAgentDescription description: DFService.decodeNotification(inform.getContent())) {
+                Iterator<?> services = description.getAllServices();
+                if (!services.hasNext()) {
+                    if (candidates.isRemote(description.getName())) {
+                        candidates.deregister(description.getName());
+                    }
+                    continue;
+                }
+
+                MapModel.Intention intention = getIntention((ServiceDescription) services.next());
+                if (intention != null && !partition.owns(intention.from.districtId)) {
+                    candidates.registerRemote(description.getName(), intention);
+                }
+            }
+        } catch (FIPAException e) {
+            // one bad notification should not take the container down, the next ones still update the index
+            Log.warn("Mirror - skips a DF notification it cannot decode: %s\n", e.getMessage());
+        }
+    }
+
+    private MapModel.Intention getIntention(ServiceDescription service) {
+        MapModel.Node from = null;
+        MapModel.Node to = null;
+        Iterator<?> properties = service.getAllProperties();
+        while (properties.hasNext()) {
+            Property property = (Property) properties.next();
+            int id;
+            try {
+                id = Integer.parseInt(property.getValue().toString());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (property.getName().equals("from")) {
+                from = map.getNode(id);
+            } else if (property.getName().equals("to")) {
+                to = map.getNode(id);
+            }
+        }
+        return from == null || to == null ? null : new MapModel.Intention(from, to);
+    }
+}
@@ -5,44 +5,63 @@ import jade.core.behaviours.*;
 import jade.lang.acl.ACLMessage;
 import jade.lang.acl.MessageTemplate;
 import jade.proto.ContractNetInitiator;
-import jade.domain.FIPAAgentManagement.DFAgentDescription;
-
-import org.json.JSONObject;
 
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
 
 public class DriverSearchBehaviour extends ContractNetInitiator {
 
     private final Driver driver;
     private final MapModel.Intention intention;
+    private final CandidateIndex candidates;
+    // every car has as many seats as this one, so a party too large for it is not offered as a bundle
+    private final int capacity;
+    private final DirectoryCache loggers;
     private final WaitConfirmBehaviour waitConfirmBehaviour;
+    // plan whose riders travel with this cfp; passengers taken on after it was sent are not part of the deal
+    private Plan bundle;
+
+    static final int CFP_TIMEOUT = 2 * 1000;
+    static final int INFORM_TIMEOUT = 2 * 1000;
 
-    private static final int CFP_TIMEOUT = 2 * 1000;
-    private static final int INFORM_TIMEOUT = 2 * 1000;
+    static final int MAX_CFP_COUNT = 20;
 
-    private static final int MAX_CFP_COUNT = 20;
+    private static final LongAdder CFPS_SENT = Metrics.counter("search.cfp");
 
-    public DriverSearchBehaviour(DriverAgent agent, MapModel.Intention intention) {
-        super(agent, createCFP(intention));
+    public DriverSearchBehaviour(DriverAgent agent, MapModel.Intention intention, CandidateIndex candidates) {
+        super(agent, createCFP(intention, Collections.emptyList()));
         this.driver = agent;
         this.intention = intention;
+        this.candidates = candidates;
+        this.capacity = agent.getPlanner().getCapacity();
+        this.loggers = agent.getLoggingDirectory();
         this.waitConfirmBehaviour = new WaitConfirmBehaviour();
 
         registerHandleInform(waitConfirmBehaviour);
     }
 
-    private static ACLMessage createCFP(MapModel.Intention intention)  {
+    private static ACLMessage createCFP(MapModel.Intention intention, List<PassengerPlan> riders)  {
         ACLMessage cfp = new ACLMessage(ACLMessage.CFP);
         cfp.setProtocol(FIPANames.InteractionProtocol.FIPA_CONTRACT_NET);
-        cfp.setLanguage("json");
-        cfp.setContent(new JSONObject()
-                .put("from", intention.from)
-                .put("to", intention.to)
-                .toString()
-        );
+        DriverAgent.CONTENT_CODEC.writeCfp(cfp, intention, riders);
         return cfp;
     }
 
+    // a bundle is offered only if the whole party fits into one car, otherwise the riders are released
+    static List<PassengerPlan> getBundle(Plan plan, int capacity) {
+        List<PassengerPlan> riders = plan.getRiders();
+        if (!DriverAgent.BUNDLE_RIDERS || riders.size() + 1 > capacity) {
+            return Collections.emptyList();
+        }
+        return riders;
+    }
+
+    // what the initiator gives up by riding along: the bundle payment minus what its own passengers pay it
+    static double getNetPayment(Plan bundle, List<PassengerPlan> riders, double payment) {
+        return riders.isEmpty() ? payment : payment - bundle.getTotalPayment();
+    }
+
     private static class Offer {
         public final ACLMessage msg;
         public final double payment;
@@ -55,46 +74,36 @@ public class DriverSearchBehaviour extends ContractNetInitiator {
 
     @Override
     protected Vector<ACLMessage> prepareCfps(ACLMessage __) {
-        System.out.printf(
+        Log.trace(
                 "%s - prepares cfps ...\n",
                 getAgent().getLocalName()
         );
 
+        bundle = driver.getCurrentPlan();
         Vector<ACLMessage> cfps = new Vector<>();
-        cfps.add(createCFP(intention));
-        try {
-            DFAgentDescription template = new DFAgentDescription();
-            template.addServices(CarpoolAgent.DRIVER_SERVICE);
-            DFAgentDescription[] descriptions = DFService.search(getAgent(), template);
-            ArrayList<AID> receivers = new ArrayList<>();
-
-            for (DFAgentDescription description: descriptions) {
-                if (description.getName().equals(getAgent().getAID())
-                        || driver.inBlackList(description.getName())) {
-                    continue;
-                }
-                receivers.add(description.getName());
-            }
-
-            if (receivers.isEmpty()) {
-                driver.acceptCurrentRoute();
-            }
+        cfps.add(createCFP(intention, getBundle(bundle, capacity)));
+        List<AID> receivers = candidates.query(
+                intention, MAX_CFP_COUNT,
+                aid -> aid.equals(getAgent().getAID()) || driver.inBlackList(aid),
+                ThreadLocalRandom.current()
+        );
 
-            Collections.shuffle(receivers);
-            for (int i = 0; i < Math.min(receivers.size(), MAX_CFP_COUNT); ++i) {
-                AID receiver = receivers.get(i);
+        if (receivers.isEmpty()) {
+            driver.acceptCurrentRoute();
+        }
 
-                System.out.printf(
-                        "%s - sends cfp to %s\n",
-                        getAgent().getLocalName(),
-                        receiver.getLocalName()
-                );
+        for (AID receiver: receivers) {
+            Log.trace(
+                    "%s - sends cfp to %s\n",
+                    getAgent().getLocalName(),
+                    receiver.getLocalName()
+            );
 
-                cfps.get(0).addReceiver(receiver);
-            }
-        } catch (Exception e) {
-            System.out.println("Error: " + e);
-            System.exit(1);
+            cfps.get(0).addReceiver(receiver);
+        }
+        candidates.recordCfps(receivers);
+        if (Metrics.ENABLED) {
+            CFPS_SENT.add(receivers.size());
         }
         // We want to receive a reply in 10 secs
         cfps.get(0).setReplyByDate(new Date(System.currentTimeMillis() + CFP_TIMEOUT));
@@ -108,12 +117,26 @@ public class DriverSearchBehaviour extends ContractNetInitiator {
             ACLMessage rsp = (ACLMessage) obj;
 
             if (rsp.getPerformative() == ACLMessage.PROPOSE) {
-                JSONObject content = new JSONObject(rsp.getContent());
                 AID sender = rsp.getSender();
-                double payment = content.getDouble("payment");
+                double payment;
+                try {
+                    payment = ContentCodec.forMessage(rsp).readProposal(rsp);
+                } catch (IllegalArgumentException e) {
+                    Log.debug(
+                            "%s - cannot read proposal from %s: %s\n",
+                            getAgent().getLocalName(),
+                            sender.getLocalName(),
+                            e.getMessage()
+                    );
+                    // the proposer still holds its quote, so it is released like any other losing offer
+                    ACLMessage rejectMsg = rsp.createReply();
+                    rejectMsg.setPerformative(ACLMessage.REJECT_PROPOSAL);
+                    acceptances.add(rejectMsg);
+                    continue;
+                }
                 offers.add(new Offer(rsp, payment));
 
-                System.out.printf(
+                Log.trace(
                         "%s - receives proposal from %s with payment=%f\n",
                         getAgent().getLocalName(),
                         sender.getLocalName(),
@@ -122,6 +145,7 @@ public class DriverSearchBehaviour extends ContractNetInitiator {
             }
         }
 
+        candidates.recordProposals(offers.size());
         if (offers.isEmpty()) {
             driver.incAttemptCount();
             return;
@@ -129,6 +153,7 @@ public class DriverSearchBehaviour extends ContractNetInitiator {
 
         offers.sort((Offer a, Offer b) -> Double.compare(a.payment, b.payment));
         Offer best = offers.get(0);
+        List<PassengerPlan> riders = getBundle(bundle, capacity);
 
         for (int i = 1; i < offers.size(); ++i) {
             ACLMessage msg = offers.get(i).msg;
@@ -136,7 +161,7 @@ public class DriverSearchBehaviour extends ContractNetInitiator {
             rejectMsg.setPerformative(ACLMessage.REJECT_PROPOSAL);
             acceptances.add(rejectMsg);
 
-            if (driver.getCurrentIncome() > -offers.get(i).payment) {
+            if (driver.getCurrentIncome() > -getNetPayment(bundle, riders, offers.get(i).payment)) {
                 driver.addToBlackList(msg.getSender());
             }
         }
@@ -144,8 +169,8 @@ public class DriverSearchBehaviour extends ContractNetInitiator {
         ACLMessage chosen = best.msg;
         ACLMessage reply = chosen.createReply();
 
-        if (accept(best.payment)) {
-            System.out.printf(
+        if (accept(driver, getNetPayment(bundle, riders, best.payment))) {
+            Log.trace(
                     "%s - have chosen proposal from %s\n",
                     getAgent().getLocalName(),
                     chosen.getSender().getLocalName()
@@ -153,6 +178,7 @@ public class DriverSearchBehaviour extends ContractNetInitiator {
 
             reply.setReplyByDate(new Date(System.currentTimeMillis() + INFORM_TIMEOUT));
             reply.setPerformative(ACLMessage.ACCEPT_PROPOSAL);
+            ((DriverAgent) getAgent()).setAwaitingConfirm(true);
         } else {
             reply.setPerformative(ACLMessage.REJECT_PROPOSAL);
         }
@@ -160,7 +186,7 @@ public class DriverSearchBehaviour extends ContractNetInitiator {
         acceptances.add(reply);
     }
 
-    private boolean accept(double payment) {
+    static boolean accept(Driver driver, double payment) {
         if (driver.getCurrentIncome() > -payment && !driver.hasCurrentRouteChanged()) {
             driver.acceptCurrentRoute();
             return false;
@@ -173,11 +199,12 @@ public class DriverSearchBehaviour extends ContractNetInitiator {
 
     @Override
     protected void handleFailure(ACLMessage failure) {
-        System.out.printf(
+        Log.trace(
                 "%s - receives failure message from %s\n",
                 getAgent().getLocalName(),
                 failure.getSender().getLocalName()
         );
+        ((DriverAgent) getAgent()).setAwaitingConfirm(false);
 
         reset();
     }
@@ -194,7 +221,7 @@ public class DriverSearchBehaviour extends ContractNetInitiator {
         public void action() {
             ACLMessage inform = (ACLMessage) getDataStore().get(DriverSearchBehaviour.this.REPLY_KEY);
 
-            System.out.printf(
+            Log.trace(
                     "%s - receives inform message from %s\n",
                     getAgent().getLocalName(),
                     inform.getSender().getLocalName()
@@ -208,32 +235,33 @@ public class DriverSearchBehaviour extends ContractNetInitiator {
                 MessageTemplate.MatchSender(inform.getSender())
             );
 
+            // the agent cannot answer cfps while it blocks here, so it stops being offered as a candidate
+            ((DriverAgent) getAgent()).setListed(false);
             ACLMessage msg = getAgent().blockingReceive(tpl);
             if (msg.getPerformative() == ACLMessage.CONFIRM) {
-                System.out.printf("%s - receives confirm from %s\n",
+                Log.trace("%s - receives confirm from %s\n",
                         getAgent().getLocalName(), msg.getSender().getLocalName());
                 handleConfirm();
             } else if (msg.getPerformative() == ACLMessage.DISCONFIRM) {
-                System.out.printf("%s - receives disconfirm from %s\n",
+                Log.trace("%s - receives disconfirm from %s\n",
                         getAgent().getLocalName(), msg.getSender().getLocalName());
                 handleDisconfirm();
             }
         }
 
         private void handleConfirm() {
-            DriverSearchBehaviour.this.driver.quitDriving();
+            List<PassengerPlan> riders = getBundle(bundle, capacity);
+            DriverSearchBehaviour.this.driver.quitDriving(
+                    riders.isEmpty() ? Collections.emptySet() : bundle.getPassengers()
+            );
             try {
                 ACLMessage notification = new ACLMessage(ACLMessage.INFORM);
-                notification.setContent(new JSONObject()
-                        .put("sender-type", "passenger")
-                        .toString()
-                );
+                DriverAgent.CONTENT_CODEC.writeReport(notification, ContentCodec.Report.passenger(
+                        DriverSearchBehaviour.this.driver.getInitialRouteCost()
+                ));
 
-                DFAgentDescription template = new DFAgentDescription();
-                template.addServices(CarpoolAgent.LOGGING_SERVICE);
-                DFAgentDescription[] descriptions = DFService.search(getAgent(), template);
-                for (DFAgentDescription description: descriptions) {
-                    notification.addReceiver(description.getName());
+                for (AID logger: loggers.lookup(getAgent())) {
+                    notification.addReceiver(logger);
                 }
 
                 getAgent().send(notification);
@@ -244,6 +272,8 @@ public class DriverSearchBehaviour extends ContractNetInitiator {
         }
 
         private void handleDisconfirm() {
+            ((DriverAgent) getAgent()).setAwaitingConfirm(false);
+            ((DriverAgent) getAgent()).setListed(true);
             DriverSearchBehaviour.this.reset();
         }
     }
@@ -0,0 +1,214 @@
+import java.util.*;
+
+class ExactPlanner implements RoutePlanner {
+
+    private static final int CLOCK_CHECK_PERIOD = 1024;
+
+    private final MapModel map;
+    private final int capacity;
+    private final int maxStops;
+    private final long timeBudgetNs;
+    private final RoutePlanner fallback;
+
+    // search state, preallocated for maxStops so the branch-and-bound loop never allocates; the per-state tables
+    // grow exponentially with the stop count, so they only grow to the largest plan this planner has searched
+    private final MapModel.Node[] points;
+    private final double[] dist;
+    private final int[] partner;
+    private final boolean[] isSource;
+    private final int[] order;
+    private final int[] bestOrder;
+    // cheapest known cost of reaching (visited set, current stop); the load is implied by the set
+    private double[] reached;
+    // stop windows and the time the cheapest known path leaves each state; only used with time windows
+    private final double[] earliest;
+    private final double[] latest;
+    private double[] reachedTime;
+    private TravelTimes times;
+    private boolean timed;
+    private double startTime;
+    private double endLatest;
+    private int stopCount;
+    private double bestCost;
+    private long searchStart;
+    private int expanded;
+    private boolean timedOut;
+
+    ExactPlanner(MapModel map, int capacity, int maxStops, long timeBudgetNs, RoutePlanner fallback) {
+        this.map = map;
+        this.capacity = capacity;
+        this.maxStops = maxStops;
+        this.timeBudgetNs = timeBudgetNs;
+        this.fallback = fallback;
+
+        assert maxStops < Integer.SIZE;
+        int size = maxStops + 2;
+        points = new MapModel.Node[size];
+        dist = new double[size * size];
+        partner = new int[maxStops];
+        isSource = new boolean[maxStops];
+        order = new int[maxStops];
+        bestOrder = new int[maxStops];
+        reached = new double[0];
+        earliest = new double[maxStops];
+        latest = new double[maxStops];
+        reachedTime = new double[0];
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public List<Destination> plan(
+            MapModel.Intention vehicle, List<Destination> stops, Destination source, Destination sink
+    ) {
+        List<Destination> heuristic = fallback.plan(vehicle, stops, source, sink);
+        if (stops.size() + 2 > maxStops) {
+            return heuristic;
+        }
+
+        ArrayList<Destination> destinations = new ArrayList<>(stops);
+        destinations.add(source);
+        destinations.add(sink);
+        prepare(vehicle, destinations);
+
+        double heuristicCost = heuristic == null ? Double.MAX_VALUE : cost(heuristic, destinations);
+        bestCost = heuristicCost;
+        searchStart = System.nanoTime();
+        expanded = 0;
+        timedOut = false;
+        int states = (1 << stopCount) * stopCount;
+        if (reached.length < states) {
+            reached = new double[states];
+            reachedTime = new double[states];
+        }
+        Arrays.fill(reached, 0, states, Double.MAX_VALUE);
+
+        search(0, stopCount, 0, startTime, 0, 0);
+        if (bestCost >= heuristicCost) {
+            return heuristic;
+        }
+        ArrayList<Destination> sequence = new ArrayList<>(stopCount);
+        for (int i = 0; i < stopCount; ++i) {
+            sequence.add(destinations.get(bestOrder[i]));
+        }
+        return sequence;
+    }
+
+    public boolean hasTimedOut() {
+        return timedOut;
+    }
+
+    private void prepare(MapModel.Intention vehicle, List<Destination> destinations) {
+        stopCount = destinations.size();
+        int size = stopCount + 2;
+        times = map.getTravelTimes();
+        timed = vehicle.isTimed();
+        startTime = vehicle.departure.earliest;
+        endLatest = vehicle.arrival.latest;
+        for (int i = 0; i < stopCount; ++i) {
+            Destination dst = destinations.get(i);
+            points[i] = dst.node;
+            isSource[i] = dst.tag == Destination.Tag.SOURCE;
+            earliest[i] = dst.window.earliest;
+            latest[i] = dst.window.latest;
+            timed |= dst.window.isBounded();
+            partner[i] = -1;
+            for (int j = 0; j < stopCount; ++j) {
+                if (j != i && destinations.get(j).aid.equals(dst.aid)) {
+                    partner[i] = j;
+                }
+            }
+        }
+        points[stopCount] = vehicle.from;
+        points[stopCount + 1] = vehicle.to;
+
+        for (int i = 0; i < size; ++i) {
+            for (int j = 0; j < size; ++j) {
+                dist[i * size + j] = i == j ? 0 : map.getDistance(points[i], points[j]);
+            }
+        }
+    }
+
+    private double cost(List<Destination> sequence, List<Destination> destinations) {
+        int size = stopCount + 2;
+        int curr = stopCount;
+        double total = 0;
+        for (Destination dst: sequence) {
+            int next = destinations.indexOf(dst);
+            total += dist[curr * size + next];
+            curr = next;
+        }
+        return total + dist[curr * size + stopCount + 1];
+    }
+
+    // time is when the vehicle leaves curr and stays 0 without time windows
+    private void search(int depth, int curr, double cost, double time, int visited, int load) {
+        int size = stopCount + 2;
+        int end = stopCount + 1;
+
+        if (depth == stopCount) {
+            double total = cost + dist[curr * size + end];
+            if (timed && times.getArrival(time, dist[curr * size + end]) > endLatest) {
+                return;
+            }
+            if (total < bestCost) {
+                bestCost = total;
+                System.arraycopy(order, 0, bestOrder, 0, stopCount);
+            }
+            return;
+        }
+
+        if (++expanded % CLOCK_CHECK_PERIOD == 0 && System.nanoTime() - searchStart > timeBudgetNs) {
+            timedOut = true;
+        }
+        if (timedOut) {
+            return;
+        }
+
+        for (int i = 0; i < stopCount; ++i) {
+            if ((visited & (1 << i)) != 0) {
+                continue;
+            }
+            if (isSource[i] ? load >= capacity : (partner[i] >= 0 && (visited & (1 << partner[i])) == 0)) {
+                continue;
+            }
+
+            double next = cost + dist[curr * size + i];
+            double nextTime = 0;
+            if (timed) {
+                double at = times.getArrival(time, dist[curr * size + i]);
+                if (at > latest[i]) {
+                    continue;
+                }
+                nextTime = Math.max(at, earliest[i]);
+            }
+            // every remaining stop still has to be reached from i on the way to the end, and in time
+            double bound = dist[i * size + end];
+            boolean late = false;
+            for (int j = 0; j < stopCount && !late; ++j) {
+                if (j != i && (visited & (1 << j)) == 0) {
+                    bound = Math.max(bound, dist[i * size + j] + dist[j * size + end]);
+                    late = timed && nextTime + times.getMinMinutes(dist[i * size + j]) > latest[j];
+                }
+            }
+            if (late || next + bound >= bestCost) {
+                continue;
+            }
+            // a known path to the same state dominates only if it is also no later
+            int state = (visited | (1 << i)) * stopCount + i;
+            if (next >= reached[state] && (!timed || nextTime >= reachedTime[state])) {
+                continue;
+            }
+            if (next < reached[state]) {
+                reached[state] = next;
+                reachedTime[state] = nextTime;
+            }
+
+            order[depth] = i;
+            search(depth + 1, i, next, nextTime, visited | (1 << i), isSource[i] ? load + 1 : load - 1);
+        }
+    }
+}
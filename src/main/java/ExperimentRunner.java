@@ -0,0 +1,334 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Sweeps seeds, driver counts, capacities and cfp fan-outs with the headless simulation on a fork-join pool;
+// flex= gives the commutes morning-peak time windows with that many minutes of slack, 0 leaves them untimed
+//
+// usage: ExperimentRunner [seeds=1..10] [drivers=60,1000] [capacity=2,4] [cfp=10,20] [targeting=index,random]
+//     [scheduling=adaptive,fixed] [flex=0,15,30] [planner=exact,insertion,greedy] [nodes=104,1000000] [threads=N]
+//     [out=experiments.csv]
+// planner=exact, the default, is the planner the driver agents quote with
+public class ExperimentRunner {
+
+    private static final int MAP_SIZE = 104;
+    private static final int CENTER_SIZE = 4;
+    private static final int DISTRICT_COUNT = 10;
+    // larger maps come from CityGenerator and are routed with Dijkstra behind a leg cache, since neither an
+    // all-pairs oracle nor a contraction hierarchy is built in reasonable time at city scale
+    private static final int CITY_NODES_PER_DISTRICT = 10000;
+    private static final int LEG_CACHE_CAPACITY = 1 << 16;
+    // -Dcarpool.map=<file> runs every configuration on a map written by MapFile; nodes= is then ignored
+    private static final String MAP_FILE = System.getProperty("carpool.map");
+
+    static class Config {
+        final long seed;
+        final int nodes;
+        final int drivers;
+        final int capacity;
+        final int maxCfpCount;
+        final String targeting;
+        final String scheduling;
+        final int flex;
+        final String planner;
+
+        Config(
+                long seed, int nodes, int drivers, int capacity, int maxCfpCount, String targeting, String scheduling,
+                int flex, String planner
+        ) {
+            this.seed = seed;
+            this.nodes = nodes;
+            this.drivers = drivers;
+            this.capacity = capacity;
+            this.maxCfpCount = maxCfpCount;
+            this.targeting = targeting;
+            this.scheduling = scheduling;
+            this.flex = flex;
+            this.planner = planner;
+        }
+
+        // configurations that differ only by seed are aggregated together
+        String groupKey() {
+            return nodes + "," + drivers + "," + capacity + "," + maxCfpCount + "," + targeting + "," + scheduling
+                    + "," + flex + "," + planner;
+        }
+    }
+
+    // every run gets its own map, engines and drivers, so runs share nothing but the pool
+    private static class RunTask extends RecursiveTask<Simulation.Result> {
+        private final Config config;
+
+        RunTask(Config config) {
+            this.config = config;
+        }
+
+        @Override
+        protected Simulation.Result compute() {
+            MapModel map;
+            if (MAP_FILE != null) {
+                // every run maps the same file, so they share its pages instead of generating their own maps
+                try {
+                    map = MapFile.load(new File(MAP_FILE));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (!(map.getRoutingEngine() instanceof DistanceOracle)) {
+                    map.enableLegCache(LEG_CACHE_CAPACITY);
+                }
+            } else if (config.nodes == MAP_SIZE) {
+                map = MapModel.generate(MAP_SIZE, CENTER_SIZE, DISTRICT_COUNT, config.seed);
+                map.buildDistanceOracle();
+            } else {
+                map = CityGenerator.generate(
+                        config.nodes, Math.max(CENTER_SIZE, config.nodes / 100),
+                        Math.max(DISTRICT_COUNT, config.nodes / CITY_NODES_PER_DISTRICT), config.seed
+                );
+                map.enableLegCache(LEG_CACHE_CAPACITY);
+            }
+            Simulation simulation = new Simulation(
+                    map, map.generateCommutes(config.drivers, config.seed, config.flex),
+                    createPlanner(config.planner, map, config.capacity), config.maxCfpCount, config.seed
+            );
+            if (config.targeting.equals("index")) {
+                simulation.useCandidateIndex();
+            }
+            if (config.scheduling.equals("fixed")) {
+                simulation.useFixedPeriodScheduling();
+            }
+            return simulation.run();
+        }
+    }
+
+    private static RoutePlanner createPlanner(String name, MapModel map, int capacity) {
+        switch (name) {
+            case "insertion":
+                return new InsertionPlanner(map, capacity);
+            case "greedy":
+                return new GreedyPlanner(map, capacity);
+            default:
+                return DriverAgent.createPlanner(map, capacity);
+        }
+    }
+
+    private static class Stats {
+        int count;
+        double sum;
+        double sumSq;
+
+        void add(double value) {
+            ++count;
+            sum += value;
+            sumSq += value * value;
+        }
+
+        double mean() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        double std() {
+            if (count < 2) {
+                return 0;
+            }
+            double mean = mean();
+            return Math.sqrt(Math.max(0, (sumSq - count * mean * mean) / (count - 1)));
+        }
+    }
+
+    private static class Group {
+        final Config config;
+        final Stats baseline = new Stats();
+        final Stats resulting = new Stats();
+        final Stats saving = new Stats();
+        final Stats drivers = new Stats();
+        final Stats rounds = new Stats();
+        final Stats messages = new Stats();
+        final Stats hitRate = new Stats();
+        final Stats simulatedTime = new Stats();
+        final Stats wallTime = new Stats();
+
+        Group(Config config) {
+            this.config = config;
+        }
+
+        void add(Simulation.Result result) {
+            baseline.add(result.initialCost);
+            resulting.add(result.totalCost);
+            saving.add(result.initialCost == 0 ? 0 : 1 - result.totalCost / result.initialCost);
+            drivers.add(result.drivers);
+            rounds.add(result.rounds);
+            messages.add(result.messages);
+            hitRate.add(result.cfps == 0 ? 0 : (double) result.proposals / result.cfps);
+            simulatedTime.add(result.simulatedTimeMs);
+            wallTime.add(result.wallTimeMs);
+        }
+    }
+
+    public static List<Config> sweep(
+            long[] seeds, int[] nodes, int[] drivers, int[] capacities, int[] cfpCounts, String[] targetings,
+            String[] schedulings, int[] flexes, String[] planners
+    ) {
+        ArrayList<Config> configs = new ArrayList<>();
+        for (int size: nodes) {
+            for (int n: drivers) {
+                for (int capacity: capacities) {
+                    for (int cfpCount: cfpCounts) {
+                        for (String targeting: targetings) {
+                            for (String scheduling: schedulings) {
+                                for (int flex: flexes) {
+                                    for (String planner: planners) {
+                                        for (long seed: seeds) {
+                                            configs.add(new Config(
+                                                    seed, size, n, capacity, cfpCount, targeting, scheduling, flex,
+                                                    planner
+                                            ));
+                                        }
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return configs;
+    }
+
+    public static List<Simulation.Result> run(List<Config> configs, ForkJoinPool pool) {
+        ArrayList<RunTask> tasks = new ArrayList<>(configs.size());
+        for (Config config: configs) {
+            tasks.add(new RunTask(config));
+        }
+        return pool.invoke(new RecursiveTask<List<Simulation.Result>>() {
+            @Override
+            protected List<Simulation.Result> compute() {
+                invokeAll(tasks);
+                ArrayList<Simulation.Result> results = new ArrayList<>(tasks.size());
+                for (RunTask task: tasks) {
+                    results.add(task.join());
+                }
+                return results;
+            }
+        });
+    }
+
+    public static void writeCsv(List<Config> configs, List<Simulation.Result> results, PrintWriter out) {
+        LinkedHashMap<String, Group> groups = new LinkedHashMap<>();
+        for (int i = 0; i < configs.size(); ++i) {
+            Config config = configs.get(i);
+            groups.computeIfAbsent(config.groupKey(), key -> new Group(config)).add(results.get(i));
+        }
+
+        out.println("nodes,drivers,capacity,max_cfp_count,targeting,scheduling,flex_min,planner,runs," +
+                "baseline_cost_mean,baseline_cost_std,resulting_cost_mean,resulting_cost_std," +
+                "saving_mean,saving_std,driving_mean,rounds_mean,messages_mean,cfp_hit_rate_mean," +
+                "simulated_time_ms_mean,wall_time_ms_mean");
+        for (Group group: groups.values()) {
+            out.println(String.format(Locale.ROOT,
+                    "%d,%d,%d,%d,%s,%s,%d,%s,%d,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f",
+                    group.config.nodes, group.config.drivers, group.config.capacity, group.config.maxCfpCount,
+                    group.config.targeting, group.config.scheduling, group.config.flex, group.config.planner,
+                    group.baseline.count,
+                    group.baseline.mean(), group.baseline.std(),
+                    group.resulting.mean(), group.resulting.std(),
+                    group.saving.mean(), group.saving.std(),
+                    group.drivers.mean(), group.rounds.mean(), group.messages.mean(),
+                    group.hitRate.mean(), group.simulatedTime.mean(), group.wallTime.mean()
+            ));
+        }
+    }
+
+    public static void main(String[] args) throws FileNotFoundException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg: args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                System.out.println("Error: expected key=value, got " + arg);
+                System.exit(1);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+
+        long[] seeds = Arrays.stream(parseInts(options.getOrDefault("seeds", "1..10"))).asLongStream().toArray();
+        int[] nodes = parseInts(options.getOrDefault("nodes", Integer.toString(MAP_SIZE)));
+        for (int size: nodes) {
+            if (size < MAP_SIZE) {
+                System.out.println("Error: nodes must be at least " + MAP_SIZE + ", got " + size);
+                System.exit(1);
+            }
+        }
+        int[] drivers = parseInts(options.getOrDefault("drivers", "60,1000"));
+        int[] capacities = parseInts(options.getOrDefault("capacity", Integer.toString(DriverAgent.CAPACITY)));
+        int[] cfpCounts = parseInts(options.getOrDefault(
+                "cfp", Integer.toString(DriverSearchBehaviour.MAX_CFP_COUNT)
+        ));
+        String[] targetings = options.getOrDefault("targeting", "index").split(",");
+        for (String targeting: targetings) {
+            if (!targeting.equals("index") && !targeting.equals("random")) {
+                System.out.println("Error: unknown targeting " + targeting);
+                System.exit(1);
+            }
+        }
+        String[] schedulings = options.getOrDefault("scheduling", "adaptive").split(",");
+        for (String scheduling: schedulings) {
+            if (!scheduling.equals("adaptive") && !scheduling.equals("fixed")) {
+                System.out.println("Error: unknown scheduling " + scheduling);
+                System.exit(1);
+            }
+        }
+        int[] flexes = parseInts(options.getOrDefault("flex", "0"));
+        String[] planners = options.getOrDefault("planner", "exact").split(",");
+        for (String planner: planners) {
+            if (!planner.equals("exact") && !planner.equals("insertion") && !planner.equals("greedy")) {
+                System.out.println("Error: unknown planner " + planner);
+                System.exit(1);
+            }
+        }
+        String output = options.getOrDefault("out", "experiments.csv");
+
+        if (MAP_FILE != null) {
+            try {
+                MapFile.load(new File(MAP_FILE));
+            } catch (IOException e) {
+                System.out.println("Error: " + e);
+                System.exit(1);
+            }
+        }
+
+        List<Config> configs = sweep(
+                seeds, nodes, drivers, capacities, cfpCounts, targetings, schedulings, flexes, planners
+        );
+        int threads = Integer.parseInt(options.getOrDefault(
+                "threads", Integer.toString(Runtime.getRuntime().availableProcessors())
+        ));
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        System.out.printf("Running %d configurations on %d threads\n", configs.size(), pool.getParallelism());
+
+        long start = System.currentTimeMillis();
+        List<Simulation.Result> results = run(configs, pool);
+        try (PrintWriter out = new PrintWriter(output)) {
+            writeCsv(configs, results, out);
+        }
+        pool.shutdown();
+        System.out.printf("Done in %d ms; results written to %s\n", System.currentTimeMillis() - start, output);
+    }
+
+    // "1,2,5" or "1..10"
+    private static int[] parseInts(String value) {
+        int range = value.indexOf("..");
+        if (range >= 0) {
+            int from = Integer.parseInt(value.substring(0, range));
+            int to = Integer.parseInt(value.substring(range + 2));
+            int[] values = new int[Math.max(0, to - from + 1)];
+            for (int i = 0; i < values.length; ++i) {
+                values[i] = from + i;
+            }
+            return values;
+        }
+        return Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+    }
+}
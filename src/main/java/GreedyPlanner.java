@@ -0,0 +1,93 @@
+import java.util.*;
+
+import jade.core.AID;
+
+class GreedyPlanner implements RoutePlanner {
+
+    private final MapModel map;
+    private final int capacity;
+
+    GreedyPlanner(MapModel map, int capacity) {
+        this.map = map;
+        this.capacity = capacity;
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public List<Destination> plan(
+            MapModel.Intention vehicle, List<Destination> stops, Destination source, Destination sink
+    ) {
+        ArrayList<Destination> destinations = new ArrayList<>(stops);
+        destinations.add(source);
+        destinations.add(sink);
+
+        int m = destinations.size();
+        MapModel.Node[] points = new MapModel.Node[m + 2];
+        boolean timed = vehicle.isTimed();
+        for (int i = 0; i < m; ++i) {
+            points[i] = destinations.get(i).node;
+            timed |= destinations.get(i).window.isBounded();
+        }
+        points[m] = vehicle.from;
+        points[m + 1] = vehicle.to;
+        LegCosts legs = new LegCosts(map, points);
+        TravelTimes times = map.getTravelTimes();
+        // the vehicle leaves the current stop at this time; stops it would reach too late are not candidates
+        double time = vehicle.departure.earliest;
+        double nextTime = time;
+
+        ArrayList<Destination> sequence = new ArrayList<>(m);
+        boolean[] visited = new boolean[m];
+        Set<AID> onBoard = new HashSet<>();
+        int curr = m;
+
+        while (sequence.size() < m) {
+            double minLength = Double.MAX_VALUE;
+            int next = -1;
+
+            for (int i = 0; i < m; ++i) {
+                Destination destination = destinations.get(i);
+                if (visited[i]) {
+                    continue;
+                }
+                if ((destination.tag == Destination.Tag.SOURCE && onBoard.size() < capacity) ||
+                        (destination.tag == Destination.Tag.SINK && onBoard.contains(destination.aid))) {
+                    double length = legs.get(curr, i);
+                    if (length >= minLength) {
+                        continue;
+                    }
+                    double at = timed ? times.getArrival(time, length) : 0;
+                    if (at <= destination.window.latest) {
+                        minLength = length;
+                        next = i;
+                        nextTime = Math.max(at, destination.window.earliest);
+                    }
+                }
+            }
+
+            if (next < 0) {
+                return null;
+            }
+
+            Destination nextDestination = destinations.get(next);
+            visited[next] = true;
+            sequence.add(nextDestination);
+            if (nextDestination.tag == Destination.Tag.SOURCE) {
+                onBoard.add(nextDestination.aid);
+            } else {
+                onBoard.remove(nextDestination.aid);
+            }
+            curr = next;
+            time = nextTime;
+        }
+
+        if (timed && times.getArrival(time, legs.get(curr, m + 1)) > vehicle.arrival.latest) {
+            return null;
+        }
+        return sequence;
+    }
+}
@@ -0,0 +1,248 @@
+import java.util.*;
+
+class InsertionPlanner implements RoutePlanner {
+
+    private final MapModel map;
+    private final int capacity;
+    // insertion keeps the order of the current stops, so a full rebuild occasionally finds a cheaper sequence
+    private final GreedyPlanner greedy;
+
+    InsertionPlanner(MapModel map, int capacity) {
+        this.map = map;
+        this.capacity = capacity;
+        this.greedy = new GreedyPlanner(map, capacity);
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public List<Destination> plan(
+            MapModel.Intention vehicle, List<Destination> stops, Destination source, Destination sink
+    ) {
+        // positions 0..m+1 are the vehicle start, the current stops and the vehicle end
+        int m = stops.size();
+        int p = m + 2;
+        int d = m + 3;
+        MapModel.Node[] points = new MapModel.Node[m + 4];
+        points[0] = vehicle.from;
+        for (int i = 0; i < m; ++i) {
+            points[i + 1] = stops.get(i).node;
+        }
+        points[m + 1] = vehicle.to;
+        points[p] = source.node;
+        points[d] = sink.node;
+        LegCosts legs = new LegCosts(map, points);
+        TravelTimes times = map.getTravelTimes();
+        Timetable timetable = null;
+        if (Timetable.isTimed(vehicle, stops, source, sink)) {
+            timetable = Timetable.build(times, legs, vehicle, stops);
+            if (timetable == null) {
+                return null;
+            }
+        }
+
+        // load[i] is the number of passengers on board when leaving position i
+        int[] load = new int[m + 1];
+        for (int i = 1; i <= m; ++i) {
+            load[i] = load[i - 1] + (stops.get(i - 1).tag == Destination.Tag.SOURCE ? 1 : -1);
+        }
+
+        double bestDelta = Double.MAX_VALUE;
+        int bestSource = -1;
+        int bestSink = -1;
+
+        for (int i = 0; i <= m; ++i) {
+            if (load[i] >= capacity) {
+                continue;
+            }
+            // the vehicle leaves later from every next position, so once it cannot make the pick-up no one can
+            double leaveSource = 0;
+            if (timetable != null) {
+                if (timetable.departure[i] > source.window.latest) {
+                    break;
+                }
+                double atSource = times.getArrival(timetable.departure[i], legs.get(i, p));
+                if (atSource > source.window.latest) {
+                    continue;
+                }
+                leaveSource = Math.max(atSource, source.window.earliest);
+            }
+
+            double base = legs.get(i, i + 1);
+            double adjacent = legs.get(i, p) + legs.get(p, d) + legs.get(d, i + 1) - base;
+            if (adjacent < bestDelta && (timetable == null || timetable.keepsSink(sink, leaveSource, p, i + 1))) {
+                bestDelta = adjacent;
+                bestSource = i;
+                bestSink = i;
+            }
+
+            double sourceDetour = legs.get(i, p) + legs.get(p, i + 1) - base;
+            if (sourceDetour >= bestDelta) {
+                continue;
+            }
+            // time the vehicle leaves position j with the passenger on board, pushed back by the pick-up
+            double leave = leaveSource;
+            for (int j = i + 1; j <= m && load[j] < capacity; ++j) {
+                if (timetable != null) {
+                    double at = times.getArrival(leave, j == i + 1 ? legs.get(p, j) : legs.get(j - 1, j));
+                    if (at > timetable.latest[j]) {
+                        break;
+                    }
+                    leave = Math.max(at, timetable.windows[j].earliest);
+                    if (leave > sink.window.latest) {
+                        break;
+                    }
+                }
+                double delta = sourceDetour + legs.get(j, d) + legs.get(d, j + 1) - legs.get(j, j + 1);
+                if (delta < bestDelta && (timetable == null || timetable.keepsSink(sink, leave, j, j + 1))) {
+                    bestDelta = delta;
+                    bestSource = i;
+                    bestSink = j;
+                }
+            }
+        }
+
+        List<Destination> rebuilt = greedy.plan(vehicle, stops, source, sink);
+        if (rebuilt != null) {
+            double inserted = Double.MAX_VALUE;
+            if (bestSource >= 0) {
+                inserted = bestDelta;
+                for (int i = 0; i <= m; ++i) {
+                    inserted += legs.get(i, i + 1);
+                }
+            }
+            if (getCost(legs, stops, source, sink, rebuilt) < inserted) {
+                return rebuilt;
+            }
+        }
+        if (bestSource < 0) {
+            return null;
+        }
+
+        ArrayList<Destination> sequence = new ArrayList<>(m + 2);
+        for (int i = 0; i <= m; ++i) {
+            if (i > 0) {
+                sequence.add(stops.get(i - 1));
+            }
+            if (i == bestSource) {
+                sequence.add(source);
+            }
+            if (i == bestSink) {
+                sequence.add(sink);
+            }
+        }
+        return sequence;
+    }
+
+    // cost of a reordering of the current stops plus source and sink, read from the leg matrix of plan()
+    private static double getCost(
+            LegCosts legs, List<Destination> stops, Destination source, Destination sink, List<Destination> sequence
+    ) {
+        int m = stops.size();
+        double cost = 0;
+        int prev = 0;
+        for (Destination destination: sequence) {
+            int position = destination == source ? m + 2 : destination == sink ? m + 3 : stops.indexOf(destination) + 1;
+            cost += legs.get(prev, position);
+            prev = position;
+        }
+        return cost + legs.get(prev, m + 1);
+    }
+
+    // the current stops with time windows: when the vehicle reaches and leaves every position, and an optimistic
+    // bound on how late it may reach a position with every later stop still in its window. The bound drives at
+    // the fastest speed of the day, so checking against it never rejects a feasible insertion
+    private static class Timetable {
+        final TravelTimes times;
+        final LegCosts legs;
+        final TimeWindow[] windows;
+        final double[] arrival;
+        final double[] departure;
+        final double[] latest;
+        final int sinkPosition;
+        final int end;
+
+        private Timetable(TravelTimes times, LegCosts legs, int m) {
+            this.times = times;
+            this.legs = legs;
+            this.windows = new TimeWindow[m + 2];
+            this.arrival = new double[m + 2];
+            this.departure = new double[m + 2];
+            this.latest = new double[m + 2];
+            this.sinkPosition = m + 3;
+            this.end = m + 1;
+        }
+
+        static boolean isTimed(
+                MapModel.Intention vehicle, List<Destination> stops, Destination source, Destination sink
+        ) {
+            if (vehicle.isTimed() || source.window.isBounded() || sink.window.isBounded()) {
+                return true;
+            }
+            for (Destination stop: stops) {
+                if (stop.window.isBounded()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // null if the current stops already miss a window
+        static Timetable build(TravelTimes times, LegCosts legs, MapModel.Intention vehicle, List<Destination> stops) {
+            int m = stops.size();
+            Timetable timetable = new Timetable(times, legs, m);
+            TimeWindow[] windows = timetable.windows;
+            windows[0] = vehicle.departure;
+            for (int k = 1; k <= m; ++k) {
+                windows[k] = stops.get(k - 1).window;
+            }
+            windows[m + 1] = vehicle.arrival;
+
+            timetable.arrival[0] = windows[0].earliest;
+            timetable.departure[0] = windows[0].earliest;
+            for (int k = 1; k <= m + 1; ++k) {
+                double at = times.getArrival(timetable.departure[k - 1], legs.get(k - 1, k));
+                if (at > windows[k].latest) {
+                    return null;
+                }
+                timetable.arrival[k] = at;
+                timetable.departure[k] = Math.max(at, windows[k].earliest);
+            }
+            timetable.latest[m + 1] = windows[m + 1].latest;
+            for (int k = m; k >= 0; --k) {
+                timetable.latest[k] = Math.min(
+                        windows[k].latest, timetable.latest[k + 1] - times.getMinMinutes(legs.get(k, k + 1))
+                );
+            }
+            return timetable;
+        }
+
+        // the drop-off is driven to from position `from` left at `leave` and continues to position `next`
+        boolean keepsSink(Destination sink, double leave, int from, int next) {
+            double atSink = times.getArrival(leave, legs.get(from, sinkPosition));
+            if (atSink > sink.window.latest) {
+                return false;
+            }
+            double leaveSink = Math.max(atSink, sink.window.earliest);
+            return keepsRoute(next, times.getArrival(leaveSink, legs.get(sinkPosition, next)));
+        }
+
+        // whether the stops from position k on keep their windows when k is reached at `at`; a vehicle back on
+        // schedule stays on it
+        private boolean keepsRoute(int k, double at) {
+            while (true) {
+                if (at > latest[k]) {
+                    return false;
+                }
+                if (at <= arrival[k] || k == end) {
+                    return true;
+                }
+                at = times.getArrival(Math.max(at, windows[k].earliest), legs.get(k, k + 1));
+                ++k;
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import jade.core.AID;
+import jade.lang.acl.ACLMessage;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// Human-readable content, handy when tracing messages with the sniffer
+public class JsonCodec implements ContentCodec {
+
+    public static final String LANGUAGE = "json";
+    public static final JsonCodec INSTANCE = new JsonCodec();
+
+    private JsonCodec() { }
+
+    @Override
+    public String getLanguage() {
+        return LANGUAGE;
+    }
+
+    @Override
+    public void writeCfp(ACLMessage msg, MapModel.Intention intention, List<PassengerPlan> riders) {
+        JSONArray bundle = new JSONArray();
+        for (PassengerPlan rider: riders) {
+            bundle.put(putWindows(new JSONObject()
+                    .put("name", rider.aid.getName())
+                    .put("from", rider.from.id)
+                    .put("to", rider.to.id),
+                    rider.departure, rider.arrival
+            ));
+        }
+
+        msg.setLanguage(LANGUAGE);
+        msg.setContent(putWindows(new JSONObject()
+                .put("from", intention.from.id)
+                .put("to", intention.to.id)
+                .put("riders", bundle),
+                intention.departure, intention.arrival
+        ).toString());
+    }
+
+    @Override
+    public Cfp readCfp(ACLMessage msg, MapModel map) {
+        try {
+            JSONObject content = parse(msg);
+            List<PassengerPlan> riders = new ArrayList<>();
+            JSONArray bundle = content.optJSONArray("riders");
+            for (int i = 0; bundle != null && i < bundle.length(); ++i) {
+                JSONObject rider = bundle.getJSONObject(i);
+                riders.add(new PassengerPlan(
+                        new AID(rider.getString("name"), AID.ISGUID),
+                        ContentCodec.requireNode(map, rider.getInt("from")),
+                        ContentCodec.requireNode(map, rider.getInt("to")),
+                        0,
+                        getWindow(rider, "departure"),
+                        getWindow(rider, "arrival")
+                ));
+            }
+            return new Cfp(new MapModel.Intention(
+                    ContentCodec.requireNode(map, content.getInt("from")),
+                    ContentCodec.requireNode(map, content.getInt("to")),
+                    getWindow(content, "departure"), getWindow(content, "arrival")
+            ), riders);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Malformed json content: " + e.getMessage(), e);
+        }
+    }
+
+    private static JSONObject parse(ACLMessage msg) {
+        if (msg.getContent() == null) {
+            throw new IllegalArgumentException("Missing json content");
+        }
+        return new JSONObject(msg.getContent());
+    }
+
+    // windows are written as [earliest, latest] only when they bound anything
+    private static JSONObject putWindows(JSONObject trip, TimeWindow departure, TimeWindow arrival) {
+        if (departure.isBounded()) {
+            trip.put("departure", new JSONArray().put(departure.earliest).put(departure.latest));
+        }
+        if (arrival.isBounded()) {
+            trip.put("arrival", new JSONArray().put(arrival.earliest).put(arrival.latest));
+        }
+        return trip;
+    }
+
+    private static TimeWindow getWindow(JSONObject trip, String key) {
+        JSONArray window = trip.optJSONArray(key);
+        return window == null ? TimeWindow.ANY : new TimeWindow(window.getDouble(0), window.getDouble(1));
+    }
+
+    @Override
+    public void writeProposal(ACLMessage msg, double payment) {
+        msg.setLanguage(LANGUAGE);
+        msg.setContent(new JSONObject()
+                .put("payment", payment)
+                .toString()
+        );
+    }
+
+    @Override
+    public double readProposal(ACLMessage msg) {
+        try {
+            return parse(msg).getDouble("payment");
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Malformed json content: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void writeRefusal(ACLMessage msg, String reason) {
+        msg.setLanguage(LANGUAGE);
+        msg.setContent(new JSONObject()
+                .put("reason", reason)
+                .toString()
+        );
+    }
+
+    @Override
+    public void writeReport(ACLMessage msg, Report report) {
+        JSONObject content = new JSONObject()
+                .put("sender-type", report.senderType)
+                .put("initial-cost", report.initialCost);
+        if (report.senderType.equals(Report.DRIVER)) {
+            JSONArray route = new JSONArray();
+            for (MapModel.Node node: report.route) {
+                route.put(node.id);
+            }
+            JSONArray passengers = new JSONArray();
+            for (PassengerPlan passenger: report.passengers) {
+                passengers.put(passenger.toJSON());
+            }
+            content.put("cost", report.cost)
+                    .put("income", report.income)
+                    .put("route", route)
+                    .put("passengers", passengers);
+        }
+
+        msg.setLanguage(LANGUAGE);
+        msg.setContent(content.toString());
+    }
+
+    @Override
+    public Report readReport(ACLMessage msg, MapModel map) {
+        try {
+            JSONObject content = parse(msg);
+            String senderType = content.getString("sender-type");
+            double initialCost = content.getDouble("initial-cost");
+            if (!senderType.equals(Report.DRIVER)) {
+                return Report.passenger(initialCost);
+            }
+
+            List<MapModel.Node> route = new ArrayList<>();
+            JSONArray nodes = content.getJSONArray("route");
+            for (int i = 0; i < nodes.length(); ++i) {
+                route.add(ContentCodec.requireNode(map, nodes.getInt(i)));
+            }
+            List<PassengerPlan> passengers = new ArrayList<>();
+            JSONArray plans = content.getJSONArray("passengers");
+            for (int i = 0; i < plans.length(); ++i) {
+                JSONObject plan = plans.getJSONObject(i);
+                passengers.add(new PassengerPlan(
+                        new AID(plan.getString("name"), AID.ISGUID),
+                        ContentCodec.requireNode(map, plan.getInt("from")),
+                        ContentCodec.requireNode(map, plan.getInt("to")),
+                        plan.getDouble("payment")
+                ));
+            }
+            return new Report(
+                    senderType, initialCost, content.getDouble("cost"), content.getDouble("income"), route, passengers
+            );
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Malformed json content: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lock-free log-linear histogram of nanosecond latencies in the spirit of HdrHistogram: every power of two
+// is split into 2^SUB_BITS buckets, so a recorded value is off by at most about 3% of itself. Threads count
+// into one of STRIPES copies of the buckets, merged when read, so agents timing the same call do not all
+// contend on one counter
+public class LatencyHistogram {
+
+    // start value of a call that sampling skips, ignored by recordSince
+    public static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BITS) * SUB_COUNT;
+    private static final int STRIPES = 8;
+
+    private final AtomicLongArray buckets;
+    private final LongAdder count;
+    private final LongAdder sum;
+    private final AtomicLong max;
+    private final int sampleEvery;
+
+    public LatencyHistogram() {
+        this(1);
+    }
+
+    // times about one call in sampleEvery, for calls so cheap that two clock reads would dominate them; the
+    // count is then of samples, not of calls
+    public LatencyHistogram(int sampleEvery) {
+        if (sampleEvery < 1) {
+            throw new IllegalArgumentException("Bad sampling rate " + sampleEvery);
+        }
+        this.buckets = new AtomicLongArray(STRIPES * BUCKET_COUNT);
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+        this.max = new AtomicLong();
+        this.sampleEvery = sampleEvery;
+    }
+
+    // start of a timed section, or NOT_SAMPLED if this call is not timed
+    public long start() {
+        if (!Metrics.ENABLED
+                || sampleEvery > 1 && ThreadLocalRandom.current().nextInt(sampleEvery) != 0) {
+            return NOT_SAMPLED;
+        }
+        return System.nanoTime();
+    }
+
+    public void recordSince(long startNs) {
+        if (Metrics.ENABLED && startNs != NOT_SAMPLED) {
+            record(System.nanoTime() - startNs);
+        }
+    }
+
+    public void record(long valueNs) {
+        long value = Math.max(0, valueNs);
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        buckets.incrementAndGet(stripe * BUCKET_COUNT + indexOf(value));
+        count.increment();
+        sum.add(value);
+        long prev = max.get();
+        while (value > prev && !max.compareAndSet(prev, value)) {
+            prev = max.get();
+        }
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        int sub = (int) (value >>> shift) & (SUB_COUNT - 1);
+        return ((shift + 1) << SUB_BITS) + sub;
+    }
+
+    // highest value that falls into the bucket
+    static long upperBoundOf(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int shift = (index >>> SUB_BITS) - 1;
+        long sub = index & (SUB_COUNT - 1);
+        return ((SUB_COUNT + sub + 1) << shift) - 1;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getMeanNs() {
+        long n = getCount();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    public long getMaxNs() {
+        return max.get();
+    }
+
+    // the value below which the given fraction of the recorded latencies falls, at bucket precision
+    public long getPercentileNs(double fraction) {
+        long total = getCount();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            for (int stripe = 0; stripe < STRIPES; ++stripe) {
+                seen += buckets.get(stripe * BUCKET_COUNT + i);
+            }
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), getMaxNs());
+            }
+        }
+        return getMaxNs();
+    }
+}
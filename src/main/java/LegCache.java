@@ -0,0 +1,139 @@
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LegCache implements RoutingEngine {
+
+    private static final int SEGMENT_COUNT = 16;
+
+    private static class Leg {
+        final double distance;
+        // stored from the lower to the higher node id; null until a path was requested
+        volatile MapModel.Node[] path;
+
+        Leg(double distance) {
+            this.distance = distance;
+        }
+    }
+
+    // access-ordered LRU map guarded by its own monitor, so agents only contend within one segment
+    private static class Segment extends LinkedHashMap<Long, Leg> {
+        private final int capacity;
+        private final LongAdder evictions;
+
+        Segment(int capacity, LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Leg> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private final RoutingEngine engine;
+    private final Segment[] segments;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    public LegCache(RoutingEngine engine, int capacity) {
+        this.engine = engine;
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+        this.segments = new Segment[SEGMENT_COUNT];
+        int segmentCapacity = Math.max(1, capacity / SEGMENT_COUNT);
+        for (int i = 0; i < SEGMENT_COUNT; ++i) {
+            segments[i] = new Segment(segmentCapacity, evictions);
+        }
+    }
+
+    @Override
+    public double getDistance(MapModel.Node source, MapModel.Node sink) {
+        if (source == sink) {
+            return 0;
+        }
+        return getLeg(source, sink).distance;
+    }
+
+    @Override
+    public List<MapModel.Node> getPath(MapModel.Node source, MapModel.Node sink) {
+        Leg leg = getLeg(source, sink);
+        MapModel.Node[] path = leg.path;
+        if (path == null) {
+            MapModel.Node low = source.id <= sink.id ? source : sink;
+            MapModel.Node high = source.id <= sink.id ? sink : source;
+            List<MapModel.Node> nodes = engine.getPath(low, high);
+            if (nodes == null) {
+                return null;
+            }
+            path = nodes.toArray(new MapModel.Node[0]);
+            leg.path = path;
+        }
+
+        ArrayList<MapModel.Node> copy = new ArrayList<>(Arrays.asList(path));
+        if (source.id > sink.id) {
+            Collections.reverse(copy);
+        }
+        return copy;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        long h = getHitCount();
+        long m = getMissCount();
+        return String.format(
+                "hits=%d; misses=%d; evictions=%d; hit rate=%.3f",
+                h, m, getEvictionCount(), (h + m) == 0 ? 0.0 : (double) h / (h + m)
+        );
+    }
+
+    private Leg getLeg(MapModel.Node source, MapModel.Node sink) {
+        long key = source.id <= sink.id
+                ? ((long) source.id << 32) | sink.id
+                : ((long) sink.id << 32) | source.id;
+        Segment segment = segments[(int) (mix(key) & (SEGMENT_COUNT - 1))];
+
+        Leg leg;
+        synchronized (segment) {
+            leg = segment.get(key);
+        }
+        if (leg != null) {
+            hits.increment();
+            return leg;
+        }
+
+        // the search runs outside the segment lock; concurrent misses on one key just race to store equal legs
+        misses.increment();
+        leg = new Leg(engine.getDistance(source, sink));
+        synchronized (segment) {
+            segment.put(key, leg);
+        }
+        return leg;
+    }
+
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return key;
+    }
+}
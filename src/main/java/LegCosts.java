@@ -0,0 +1,23 @@
+import java.util.Arrays;
+
+class LegCosts {
+
+    private final MapModel map;
+    private final MapModel.Node[] nodes;
+    private final double[] costs;
+
+    LegCosts(MapModel map, MapModel.Node[] nodes) {
+        this.map = map;
+        this.nodes = nodes;
+        this.costs = new double[nodes.length * nodes.length];
+        Arrays.fill(costs, Double.NaN);
+    }
+
+    double get(int from, int to) {
+        int i = from * nodes.length + to;
+        if (Double.isNaN(costs[i])) {
+            costs[i] = from == to ? 0 : map.getDistance(nodes[from], nodes[to]);
+        }
+        return costs[i];
+    }
+}
@@ -0,0 +1,93 @@
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+// Leveled logging through the async appender; messages are formatted on the writer thread, and callers that
+// would build expensive arguments check isEnabled first. Configured with system properties:
+//     carpool.log.level=TRACE|DEBUG|INFO|WARN|ERROR|OFF (INFO by default, TRACE shows every negotiation step)
+//     carpool.log.trace=<file>   records below INFO go to this binary trace instead of stdout
+//     carpool.log.buffer=<n>     ring capacity in records
+//
+// usage: Log <trace file> prints a binary trace
+public final class Log {
+
+    public enum Level { TRACE, DEBUG, INFO, WARN, ERROR, OFF }
+
+    private static final Level LEVEL = parseLevel(System.getProperty("carpool.log.level", "INFO"));
+    private static final AsyncAppender APPENDER = createAppender();
+
+    private Log() { }
+
+    // a mistyped level must not take down the first class that logs
+    private static Level parseLevel(String name) {
+        try {
+            return Level.valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Warning: unknown carpool.log.level " + name + ", logging at INFO");
+            return Level.INFO;
+        }
+    }
+
+    private static AsyncAppender createAppender() {
+        try {
+            String trace = System.getProperty("carpool.log.trace");
+            int capacity = Integer.getInteger("carpool.log.buffer", 1 << 16);
+            AsyncAppender appender = new AsyncAppender(
+                    capacity, System.out, trace == null ? null : new FileOutputStream(trace)
+            );
+            Runtime.getRuntime().addShutdownHook(new Thread(appender::close));
+            return appender;
+        } catch (IOException e) {
+            System.out.println("Error: " + e);
+            System.exit(1);
+            return null;
+        }
+    }
+
+    public static boolean isEnabled(Level level) {
+        return level.compareTo(LEVEL) >= 0;
+    }
+
+    public static void trace(String format, Object... args) {
+        if (isEnabled(Level.TRACE)) {
+            APPENDER.append(Level.TRACE, format, args);
+        }
+    }
+
+    public static void debug(String format, Object... args) {
+        if (isEnabled(Level.DEBUG)) {
+            APPENDER.append(Level.DEBUG, format, args);
+        }
+    }
+
+    public static void info(String format, Object... args) {
+        if (isEnabled(Level.INFO)) {
+            APPENDER.append(Level.INFO, format, args);
+        }
+    }
+
+    public static void warn(String format, Object... args) {
+        if (isEnabled(Level.WARN)) {
+            APPENDER.append(Level.WARN, format, args);
+        }
+    }
+
+    public static void flush() {
+        APPENDER.flush();
+    }
+
+    public static long getDroppedCount() {
+        return APPENDER.getDroppedCount();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.out.println("Error: expected a trace file");
+            System.exit(1);
+        }
+        try (InputStream in = new FileInputStream(args[0])) {
+            AsyncAppender.dump(in, System.out);
+        }
+    }
+}
@@ -0,0 +1,321 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+// Versioned binary map: a header with a section table, then 8-byte aligned little-endian sections
+//     int magic, int version, int node count, int arc count (two per undirected edge), int section count,
+//     per section: int kind, int reserved, long offset, long length in bytes
+// NODES holds one int per node (district type ordinal << 24 | district id), OFFSETS n + 1 ints, TARGETS and
+// WEIGHTS one int or float per arc; ORACLE_DISTANCES (n * n floats) and ORACLE_NEXT (n * n ints) are optional.
+// Sections are mapped read-only, so loading takes no parsing and JVMs loading the same file share its pages
+//
+// usage: MapFile generate out=<file> [generator=model|city] [nodes=104] [center=4] [districts=10] [seed=21]
+//            [oracle=false]
+//        MapFile dot in=<file> out=<file> [oracle=false]
+//        MapFile info in=<file>
+public final class MapFile {
+
+    static final int MAGIC = 0x43504d46;
+    // 2: weighted oracle distances as floats instead of hop counts as shorts
+    static final int VERSION = 2;
+
+    static final int NODES = 1;
+    static final int OFFSETS = 2;
+    static final int TARGETS = 3;
+    static final int WEIGHTS = 4;
+    static final int ORACLE_DISTANCES = 5;
+    static final int ORACLE_NEXT = 6;
+
+    private static final int HEADER_BYTES = 5 * Integer.BYTES;
+    private static final int SECTION_ENTRY_BYTES = 2 * Integer.BYTES + 2 * Long.BYTES;
+    private static final int CHUNK_BYTES = 1 << 16;
+
+    private MapFile() { }
+
+    // the oracle is optional and must belong to the map's compact graph
+    public static void write(MapModel map, DistanceOracle oracle, File file) throws IOException {
+        CompactGraph graph = map.getCompactGraph();
+        int n = graph.size();
+        int arcs = 2 * graph.edgeCount();
+
+        List<Integer> kinds = new ArrayList<>(Arrays.asList(NODES, OFFSETS, TARGETS, WEIGHTS));
+        List<Long> lengths = new ArrayList<>(Arrays.asList(
+                (long) n * Integer.BYTES, (long) (n + 1) * Integer.BYTES,
+                (long) arcs * Integer.BYTES, (long) arcs * Float.BYTES
+        ));
+        if (oracle != null) {
+            kinds.add(ORACLE_DISTANCES);
+            lengths.add((long) n * n * Float.BYTES);
+            kinds.add(ORACLE_NEXT);
+            lengths.add((long) n * n * Integer.BYTES);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + kinds.size() * SECTION_ENTRY_BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(arcs).putInt(kinds.size());
+        long offset = align(header.capacity());
+        for (int i = 0; i < kinds.size(); ++i) {
+            if (lengths.get(i) > Integer.MAX_VALUE) {
+                throw new IOException("Section " + kinds.get(i) + " is too large to map: " + lengths.get(i));
+            }
+            header.putInt(kinds.get(i)).putInt(0).putLong(offset).putLong(lengths.get(i));
+            offset = align(offset + lengths.get(i));
+        }
+        header.flip();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(header);
+            Output out = new Output(channel);
+            for (int i = 0; i < n; ++i) {
+                MapModel.Node node = graph.getNode(i);
+                out.putInt(node.districtType.ordinal() << 24 | node.districtId);
+            }
+            out.putInts(graph.getOffsets());
+            out.putInts(graph.getTargets());
+            FloatBuffer weights = graph.getWeights();
+            out.align();
+            while (weights.hasRemaining()) {
+                out.putFloat(weights.get());
+            }
+            if (oracle != null) {
+                FloatBuffer distances = oracle.getDistances();
+                out.align();
+                while (distances.hasRemaining()) {
+                    out.putFloat(distances.get());
+                }
+                out.putInts(oracle.getNextHops());
+            }
+            out.flush();
+        }
+    }
+
+    // an oracle stored with the map becomes its routing engine
+    public static MapModel load(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), 4096))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+                throw new IOException("Not a carpool map file: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported map file version " + version + ": " + file);
+            }
+            int n = header.getInt();
+            int arcs = header.getInt();
+            int sectionCount = header.getInt();
+            if (n < 0 || arcs < 0 || sectionCount < 0
+                    || (long) sectionCount * SECTION_ENTRY_BYTES > header.remaining()) {
+                throw new IOException("Corrupt section table in map file: " + file);
+            }
+
+            Map<Integer, ByteBuffer> sections = new HashMap<>();
+            for (int i = 0; i < sectionCount; ++i) {
+                int kind = header.getInt();
+                header.getInt();
+                long offset = header.getLong();
+                long length = header.getLong();
+                if (offset < 0 || length < 0 || offset > channel.size() - length) {
+                    throw new IOException("Truncated map file: " + file);
+                }
+                if (length > Integer.MAX_VALUE) {
+                    throw new IOException("Section " + kind + " is too large to map: " + file);
+                }
+                sections.put(kind, channel.map(FileChannel.MapMode.READ_ONLY, offset, length)
+                        .order(ByteOrder.LITTLE_ENDIAN));
+            }
+
+            IntBuffer districts = section(sections, NODES, (long) n * Integer.BYTES, file).asIntBuffer();
+            IntBuffer offsets = section(sections, OFFSETS, (n + 1L) * Integer.BYTES, file).asIntBuffer();
+            IntBuffer targets = section(sections, TARGETS, (long) arcs * Integer.BYTES, file).asIntBuffer();
+            FloatBuffer weights = section(sections, WEIGHTS, (long) arcs * Float.BYTES, file).asFloatBuffer();
+            checkAdjacency(n, arcs, offsets, targets, weights, file);
+
+            MapModel.DistrictType[] types = MapModel.DistrictType.values();
+            MapModel.Node[] nodes = new MapModel.Node[n];
+            for (int i = 0; i < n; ++i) {
+                int district = districts.get(i);
+                if (district >>> 24 >= types.length) {
+                    throw new IOException("Unsupported district type " + (district >>> 24) + " in map file: " + file);
+                }
+                nodes[i] = new MapModel.Node(i, district & 0xffffff, types[district >>> 24]);
+            }
+
+            CompactGraph graph = CompactGraph.of(nodes, offsets, targets, weights);
+            MapModel map = MapModel.fromCompactGraph(graph);
+            if (sections.containsKey(ORACLE_DISTANCES)) {
+                map.setRoutingEngine(DistanceOracle.of(
+                        graph,
+                        section(sections, ORACLE_DISTANCES, (long) n * n * Float.BYTES, file).asFloatBuffer(),
+                        section(sections, ORACLE_NEXT, (long) n * n * Integer.BYTES, file).asIntBuffer()
+                ));
+            }
+            return map;
+        }
+    }
+
+    // one pass over the arcs, so a corrupt file fails here and not with an index error deep inside routing;
+    // the optional oracle sections are only checked for their size
+    private static void checkAdjacency(
+            int n, int arcs, IntBuffer offsets, IntBuffer targets, FloatBuffer weights, File file
+    ) throws IOException {
+        if (offsets.get(0) != 0 || offsets.get(n) != arcs) {
+            throw new IOException("Corrupt adjacency in map file: " + file);
+        }
+        for (int i = 0; i < n; ++i) {
+            if (offsets.get(i + 1) < offsets.get(i)) {
+                throw new IOException("Corrupt adjacency in map file: " + file);
+            }
+        }
+        for (int e = 0; e < arcs; ++e) {
+            int target = targets.get(e);
+            if (target < 0 || target >= n) {
+                throw new IOException("Arc " + e + " leads to unknown node " + target + " in map file: " + file);
+            }
+            float weight = weights.get(e);
+            if (!(weight >= 0)) {
+                throw new IOException("Arc " + e + " has weight " + weight + " in map file: " + file);
+            }
+        }
+    }
+
+    private static ByteBuffer section(Map<Integer, ByteBuffer> sections, int kind, long length, File file)
+            throws IOException {
+        ByteBuffer section = sections.get(kind);
+        if (section == null || section.capacity() != length) {
+            throw new IOException("Missing or malformed section " + kind + " in map file: " + file);
+        }
+        return section;
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+
+    // little-endian writes through a reusable chunk, padding every section to the 8-byte alignment
+    private static class Output {
+        private final FileChannel channel;
+        private final ByteBuffer chunk;
+        private long position;
+
+        Output(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.chunk = ByteBuffer.allocateDirect(CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            this.position = channel.position();
+            align();
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            chunk.putInt(value);
+        }
+
+        void putFloat(float value) throws IOException {
+            ensure(Float.BYTES);
+            chunk.putFloat(value);
+        }
+
+        void putInts(IntBuffer values) throws IOException {
+            align();
+            while (values.hasRemaining()) {
+                putInt(values.get());
+            }
+        }
+
+        void align() throws IOException {
+            long end = position + chunk.position();
+            for (long i = end; i < MapFile.align(end); ++i) {
+                ensure(1);
+                chunk.put((byte) 0);
+            }
+        }
+
+        void flush() throws IOException {
+            chunk.flip();
+            while (chunk.hasRemaining()) {
+                position += channel.write(chunk);
+            }
+            chunk.clear();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (chunk.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Error: expected generate, dot or info");
+            System.exit(1);
+        }
+        Map<String, String> options = new HashMap<>();
+        for (int i = 1; i < args.length; ++i) {
+            int eq = args[i].indexOf('=');
+            if (eq < 0) {
+                System.out.println("Error: expected key=value, got " + args[i]);
+                System.exit(1);
+            }
+            options.put(args[i].substring(0, eq), args[i].substring(eq + 1));
+        }
+
+        try {
+            long start = System.nanoTime();
+            MapModel map;
+            switch (args[0]) {
+                case "generate":
+                    int n = Integer.parseInt(options.getOrDefault("nodes", "104"));
+                    int centerN = Integer.parseInt(options.getOrDefault("center", "4"));
+                    int districtN = Integer.parseInt(options.getOrDefault("districts", "10"));
+                    long seed = Long.parseLong(options.getOrDefault("seed", "21"));
+                    map = options.getOrDefault("generator", "model").equals("city")
+                            ? CityGenerator.generate(n, centerN, districtN, seed)
+                            : MapModel.generate(n, centerN, districtN, seed);
+                    break;
+                case "dot":
+                    map = DotReader.read(new File(required(options, "in")));
+                    break;
+                case "info":
+                    map = load(new File(required(options, "in")));
+                    System.out.printf(
+                            "%d nodes, %d edges, routing with %s; loaded in %.1f ms\n",
+                            map.getNodes().size(), map.getCompactGraph().edgeCount(),
+                            map.getRoutingEngine().getClass().getSimpleName(), (System.nanoTime() - start) / 1e6
+                    );
+                    return;
+                default:
+                    System.out.println("Error: unknown command " + args[0]);
+                    System.exit(1);
+                    return;
+            }
+
+            DistanceOracle oracle = Boolean.parseBoolean(options.getOrDefault("oracle", "false"))
+                    ? map.buildDistanceOracle()
+                    : null;
+            File out = new File(required(options, "out"));
+            write(map, oracle, out);
+            System.out.printf(
+                    "%d nodes, %d edges%s written to %s in %.1f ms, %d KB\n",
+                    map.getNodes().size(), map.getCompactGraph().edgeCount(), oracle == null ? "" : " and oracle",
+                    out, (System.nanoTime() - start) / 1e6, out.length() / 1024
+            );
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Error: " + e);
+            System.exit(1);
+        }
+    }
+
+    private static String required(Map<String, String> options, String key) {
+        String value = options.get(key);
+        if (value == null) {
+            System.out.println("Error: missing " + key + "=<file>");
+            System.exit(1);
+        }
+        return value;
+    }
+}
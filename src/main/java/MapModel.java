@@ -1,6 +1,5 @@
 import java.io.File;
 import java.util.*;
-import java.util.stream.Collectors;
 
 import org.jgrapht.*;
 import org.jgrapht.ext.DOTExporter;
@@ -8,7 +7,6 @@ import org.jgrapht.ext.ExportException;
 import org.jgrapht.ext.GraphExporter;
 import org.jgrapht.graph.*;
 import org.jgrapht.generate.*;
-import org.jgrapht.alg.shortestpath.*;
 
 import org.jgrapht.alg.ConnectivityInspector;
 
@@ -23,18 +21,10 @@ public class MapModel {
         public final DistrictType districtType;
         public final int districtId;
 
-        private static int next_id = 1;
-        private static HashMap<Integer, Node> nodes = new HashMap<>();
-
-        public static Node getNodeByID(int id) {
-            return nodes.get(id);
-        }
-
-        Node(int districtId, DistrictType districtType) {
-            id = next_id++;
+        Node(int id, int districtId, DistrictType districtType) {
+            this.id = id;
             this.districtId = districtId;
             this.districtType = districtType;
-            nodes.put(id, this);
         }
 
         @Override
@@ -43,22 +33,57 @@ public class MapModel {
         }
     }
 
-    public static class Edge { }
+    // road length in km; JGraphT creates edges through the no-arg constructor, so generated roads are 1 km long
+    public static class Edge {
+        private final double weight;
+
+        public Edge() {
+            this(1);
+        }
+
+        public Edge(double weight) {
+            this.weight = weight;
+        }
+
+        public double getWeight() {
+            return weight;
+        }
+    }
 
+    // a trip with the windows for leaving from and arriving at, unbounded unless given
     public static class Intention {
         public final MapModel.Node from;
         public final MapModel.Node to;
+        public final TimeWindow departure;
+        public final TimeWindow arrival;
 
         public Intention(MapModel.Node from, MapModel.Node to) {
+            this(from, to, TimeWindow.ANY, TimeWindow.ANY);
+        }
+
+        public Intention(MapModel.Node from, MapModel.Node to, TimeWindow departure, TimeWindow arrival) {
             this.from = from;
             this.to = to;
+            this.departure = departure;
+            this.arrival = arrival;
+        }
+
+        public boolean isTimed() {
+            return departure.isBounded() || arrival.isBounded();
         }
     }
 
     private static final double PRICE_PER_KM = 1.0;
+    // morning commutes leave around 8:00, give or take this many minutes
+    private static final double COMMUTE_MEAN_DEPARTURE = 8 * 60;
+    private static final double COMMUTE_DEPARTURE_SPREAD = 45;
+    // every quote asks for dozens of routes, so only a sample of them is timed
+    private static final LatencyHistogram ROUTE_LATENCY = Metrics.sampledHistogram("map.getRoute", 64);
 
     public class Route {
-        private List<Node> path;
+        // leg end points; the first expandedLegs legs are single hops, the rest are expanded on demand
+        private List<Node> waypoints;
+        private int expandedLegs;
         private double length;
 
         public double getLength() {
@@ -70,74 +95,103 @@ public class MapModel {
         }
 
         public Node getFirst() {
-            return path.get(0);
+            return waypoints.get(0);
         }
 
         public Node getLast() {
-            return path.get(path.size() - 1);
+            return waypoints.get(waypoints.size() - 1);
         }
 
         public List<Node> getNodes() {
-            return path;
+            if (waypoints != null && expandedLegs < waypoints.size() - 1) {
+                expand();
+            }
+            return waypoints;
         }
 
         public void join(Route route) {
             assert getLast().id == route.getFirst().id;
 
-            path.addAll(route.path.subList(1, route.path.size()));
+            if (expandedLegs == waypoints.size() - 1) {
+                expandedLegs += route.expandedLegs;
+            }
+            waypoints.addAll(route.waypoints.subList(1, route.waypoints.size()));
             length += route.length;
         }
 
+        private void expand() {
+            ArrayList<Node> path = new ArrayList<>(waypoints.subList(0, expandedLegs + 1));
+            for (int i = expandedLegs + 1; i < waypoints.size(); ++i) {
+                List<Node> leg = engine.getPath(waypoints.get(i - 1), waypoints.get(i));
+                path.addAll(leg.subList(1, leg.size()));
+            }
+            waypoints = path;
+            expandedLegs = path.size() - 1;
+        }
+
         @Override
         public String toString() {
-            if (path == null) {
+            if (waypoints == null) {
                 return "INFINITE";
             }
-            if (path.isEmpty()) {
+            if (waypoints.isEmpty()) {
                 return "";
             }
 
-            return String.join(" -> ",
-                    path.stream().map(Node::toString).collect(Collectors.toList()));
+            // unexpanded legs are shown as "~>" so that printing never forces a path search
+            StringBuilder builder = new StringBuilder(waypoints.get(0).toString());
+            for (int i = 1; i < waypoints.size(); ++i) {
+                builder.append(i <= expandedLegs ? " -> " : " ~> ").append(waypoints.get(i));
+            }
+            return builder.toString();
         }
 
-        public Route(ArrayList<Node> nodes) {
-            this.path = nodes;
-            this.length = nodes.size() - 1;
+        // a path of adjacent nodes, as long as the sum of its road lengths
+        public Route(List<Node> nodes) {
+            this(nodes, getPathLength(nodes));
         }
 
         private Route(Node start) {
-            this.path = new ArrayList<>();
-            this.path.add(start);
-            this.length = 0;
+            this(new ArrayList<>(Collections.singletonList(start)), 0);
         }
 
-        private Route(GraphPath<Node, Edge> path) {
-            this(path, path.getLength());
+        private Route(Node source, Node sink, double length) {
+            this.waypoints = new ArrayList<>(Arrays.asList(source, sink));
+            this.expandedLegs = 0;
+            this.length = length;
         }
 
-        private Route(GraphPath<Node, Edge> path, double length) {
-            this.path = (path == null) ? null : path.getVertexList();
+        private Route(List<Node> path, double length) {
+            this.waypoints = path;
+            this.expandedLegs = path == null ? 0 : Math.max(0, path.size() - 1);
             this.length = length;
         }
     }
 
     private UndirectedGraph<Node, Edge> graph;
-    private DijkstraShortestPath<MapModel.Node, MapModel.Edge> dijkstra;
+    private ArrayList<Node> nodes;
+    private CompactGraph compactGraph;
+    private DijkstraEngine dijkstra;
+    // engines are immutable or internally synchronized, so agent threads query them without locking
+    private volatile RoutingEngine engine;
+    private TravelTimes travelTimes = TravelTimes.commuterPeaks();
 
     public static MapModel generate(int n, int centerN, int districtN) {
+        return generate(n, centerN, districtN, 21);
+    }
+
+    public static MapModel generate(int n, int centerN, int districtN, long seed) {
         MapModel model = new MapModel();
         int nodesInDistrict = (n - centerN) / districtN;
         int districtId = 1;
 
 //        double p = 0.5;
-        long seed = 21;
         Random rnd = new Random(seed);
 
         // generate city center
         int dId = districtId;
         GraphGenerator<Node, Edge, Node> generator = new CompleteGraphGenerator<>(centerN);
-        generator.generateGraph(model.graph, () -> new Node(dId, DistrictType.Center), null);
+        generator.generateGraph(model.graph, () -> model.newNode(dId, DistrictType.Center), null);
 
         ArrayList<MapModel.Node> centerNodes = new ArrayList<>(model.graph.vertexSet());
 
@@ -145,7 +199,7 @@ public class MapModel {
             int sdId = ++districtId;
             generator = new ScaleFreeGraphGenerator<>(nodesInDistrict, rnd.nextInt());
             UndirectedGraph<Node, Edge> suburb = new SimpleGraph<>(Edge.class);
-            generator.generateGraph(suburb, () -> new Node(sdId, DistrictType.Suburb), null);
+            generator.generateGraph(suburb, () -> model.newNode(sdId, DistrictType.Suburb), null);
 
             ArrayList<MapModel.Node> suburbNodes = new ArrayList<>(suburb.vertexSet());
 
@@ -166,39 +220,206 @@ public class MapModel {
             g.addEdge(c1.iterator().next(), c2.iterator().next());
         }
 
+        model.compactGraph = CompactGraph.build(model.nodes, model.graph);
+        model.dijkstra = new DijkstraEngine(model.compactGraph);
+        model.engine = model.dijkstra;
+        return model;
+    }
+
+    // a map that exists only in compact form, as built by CityGenerator; it has no JGraphT graph
+    static MapModel fromCompactGraph(CompactGraph compactGraph) {
+        MapModel model = new MapModel(compactGraph.size());
+        for (int i = 0; i < compactGraph.size(); ++i) {
+            model.nodes.add(compactGraph.getNode(i));
+        }
+        model.compactGraph = compactGraph;
+        model.dijkstra = new DijkstraEngine(compactGraph);
+        model.engine = model.dijkstra;
         return model;
     }
 
+    // null for maps built directly in compact form
     public UndirectedGraph<Node, Edge> getGraph() {
         return graph;
     }
 
+    public CompactGraph getCompactGraph() {
+        return compactGraph;
+    }
+
+    // random suburb-to-center commutes, one per driver
+    public List<Intention> generateCommutes(int n, long seed) {
+        ArrayList<Intention> intentions = new ArrayList<>(n);
+        Random rnd = new Random(seed);
+        for (int i = 0; i < n; ++i) {
+            Node from = nodes.get(rnd.nextInt(nodes.size()));
+            while (from.districtType != DistrictType.Suburb) {
+                from = nodes.get(rnd.nextInt(nodes.size()));
+            }
+
+            Node to = nodes.get(rnd.nextInt(nodes.size()));
+            while (to.districtType != DistrictType.Center) {
+                to = nodes.get(rnd.nextInt(nodes.size()));
+            }
+
+            intentions.add(new Intention(from, to));
+        }
+        return intentions;
+    }
+
+    // the same commutes in the morning peak: departures spread around 8:00, each trip may leave up to flex
+    // minutes late and must arrive within flex minutes of driving alone at the earliest departure
+    public List<Intention> generateCommutes(int n, long seed, double flexMinutes) {
+        List<Intention> commutes = generateCommutes(n, seed);
+        if (flexMinutes <= 0) {
+            return commutes;
+        }
+        Random rnd = new Random(seed + 1);
+        for (int i = 0; i < n; ++i) {
+            Intention commute = commutes.get(i);
+            double departure = Math.max(0, COMMUTE_MEAN_DEPARTURE + COMMUTE_DEPARTURE_SPREAD * rnd.nextGaussian());
+            double alone = travelTimes.getArrival(departure, getDistance(commute.from, commute.to));
+            commutes.set(i, new Intention(
+                    commute.from, commute.to,
+                    new TimeWindow(departure, departure + flexMinutes),
+                    new TimeWindow(0, alone + flexMinutes)
+            ));
+        }
+        return commutes;
+    }
+
+    public Node getNode(int id) {
+        return (id >= 0 && id < nodes.size()) ? nodes.get(id) : null;
+    }
+
+    public List<Node> getNodes() {
+        return Collections.unmodifiableList(nodes);
+    }
+
+    private Node newNode(int districtId, DistrictType districtType) {
+        Node node = new Node(nodes.size(), districtId, districtType);
+        nodes.add(node);
+        return node;
+    }
+
+    public DistanceOracle buildDistanceOracle() {
+        DistanceOracle oracle = DistanceOracle.build(compactGraph);
+        engine = oracle;
+        return oracle;
+    }
+
+    public ContractionHierarchy buildContractionHierarchy() {
+        ContractionHierarchy hierarchy = ContractionHierarchy.build(compactGraph);
+        engine = hierarchy;
+        return hierarchy;
+    }
+
+    public LegCache enableLegCache(int capacity) {
+        LegCache cache = new LegCache(engine, capacity);
+        engine = cache;
+        return cache;
+    }
+
+    public DijkstraEngine getReferenceEngine() {
+        return dijkstra;
+    }
+
+    public RoutingEngine getRoutingEngine() {
+        return engine;
+    }
+
+    public void setRoutingEngine(RoutingEngine engine) {
+        this.engine = engine;
+    }
+
+    public TravelTimes getTravelTimes() {
+        return travelTimes;
+    }
+
+    public void setTravelTimes(TravelTimes travelTimes) {
+        this.travelTimes = travelTimes;
+    }
+
+    // cost-only route: the node path is searched only if someone asks for it
     public Route getRoute(Node source, Node sink) {
-        GraphPath<Node, Edge> path = dijkstra.getPath(source, sink);
-        return new Route(path);
+        if (source == sink) {
+            return initRoute(source);
+        }
+        long start = ROUTE_LATENCY.start();
+        double length = engine.getDistance(source, sink);
+        ROUTE_LATENCY.recordSince(start);
+        return length == Double.MAX_VALUE ? infiniteRoute() : new Route(source, sink, length);
+    }
+
+    public Route getRoute(List<Node> waypoints) {
+        Route route = initRoute(waypoints.get(0));
+        for (int i = 1; i < waypoints.size(); ++i) {
+            route.join(getRoute(waypoints.get(i - 1), waypoints.get(i)));
+        }
+        return route;
+    }
+
+    public double getPathLength(List<Node> path) {
+        double length = 0;
+        for (int i = 1; i < path.size(); ++i) {
+            int e = compactGraph.findEdge(path.get(i - 1).id, path.get(i).id);
+            if (e < 0) {
+                throw new IllegalArgumentException("No road between " + path.get(i - 1) + " and " + path.get(i));
+            }
+            length += compactGraph.weight(e);
+        }
+        return length;
     }
 
-    public final Route INFINITE_ROUTE = new Route(null, Double.MAX_VALUE);
+    public double getDistance(Node source, Node sink) {
+        return engine.getDistance(source, sink);
+    }
+
+    // routes are mutable, so every caller gets its own instance instead of a shared constant
+    public Route infiniteRoute() {
+        return new Route((List<Node>) null, Double.MAX_VALUE);
+    }
 
     public Route initRoute(Node start) {
         return new Route(start);
     }
 
     public Route emptyRoute() {
-        return new Route(new GraphWalk<Node, Edge>(graph, new ArrayList<>(), 0));
+        return new Route(new ArrayList<>(), 0);
     }
 
     public void exportToDot()
         throws ExportException {
+        exportToDot(new File("graph.dot"));
+    }
+
+    public void exportToDot(File file)
+        throws ExportException {
+        if (graph == null) {
+            throw new ExportException("Map has no JGraphT graph to export");
+        }
+        // district attributes let DotReader restore the node metadata
         GraphExporter<Node, Edge> exporter = new DOTExporter<>(
                 (Node node) -> Integer.toString(node.id),
-                null, null
+                null, null,
+                (Node node) -> {
+                    Map<String, String> attributes = new LinkedHashMap<>();
+                    attributes.put("district", Integer.toString(node.districtId));
+                    attributes.put("type", node.districtType.name());
+                    return attributes;
+                },
+                null
         );
-        exporter.exportGraph(graph, new File("graph.dot"));
+        exporter.exportGraph(graph, file);
     }
 
     private MapModel() {
         graph = new SimpleGraph<>(Edge.class);
-        dijkstra = new DijkstraShortestPath<>(graph);
+        nodes = new ArrayList<>();
+    }
+
+    private MapModel(int size) {
+        graph = null;
+        nodes = new ArrayList<>(size);
     }
 }
@@ -0,0 +1,232 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+import javax.management.*;
+
+// Process-wide counters and latency histograms for the negotiation hot paths. Call sites look metrics up once
+// and keep the reference, so recording is a LongAdder increment or a few atomic adds. Every metric is published
+// as an attribute of the carpool:type=Metrics MBean; configured with system properties:
+//     carpool.metrics=false            turns recording off
+//     carpool.metrics.period=<ms>      prints every metric through the log at this period
+//     carpool.metrics.csv=<file>       appends every metric to a csv file at this period (10 s by default)
+public final class Metrics {
+
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("carpool.metrics", "true"));
+    public static final String OBJECT_NAME = "carpool:type=Metrics";
+
+    private static final long DEFAULT_CSV_PERIOD_MS = 10 * 1000;
+
+    private static final ConcurrentMap<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, LatencyHistogram> HISTOGRAMS = new ConcurrentHashMap<>();
+    private static final long START_MS = System.currentTimeMillis();
+
+    static {
+        if (ENABLED) {
+            // starting the platform MBean server takes a few hundred ms, too long to hold up the first caller
+            Thread registration = new Thread(Metrics::registerMBean, "metrics-jmx");
+            registration.setDaemon(true);
+            registration.start();
+            scheduleDumps();
+        }
+    }
+
+    private Metrics() { }
+
+    public static LongAdder counter(String name) {
+        return COUNTERS.computeIfAbsent(name, __ -> new LongAdder());
+    }
+
+    public static LatencyHistogram histogram(String name) {
+        return HISTOGRAMS.computeIfAbsent(name, __ -> new LatencyHistogram());
+    }
+
+    // histogram that times about one call in sampleEvery, started with LatencyHistogram.start
+    public static LatencyHistogram sampledHistogram(String name, int sampleEvery) {
+        return HISTOGRAMS.computeIfAbsent(name, __ -> new LatencyHistogram(sampleEvery));
+    }
+
+    // start of a timed section, recorded with LatencyHistogram.recordSince
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    public static void increment(LongAdder counter) {
+        if (ENABLED) {
+            counter.increment();
+        }
+    }
+
+    public static String format() {
+        return format(name -> true);
+    }
+
+    // one line per selected metric sorted by name, latencies in microseconds
+    public static String format(Predicate<String> names) {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, LongAdder> entry: new TreeMap<>(COUNTERS).entrySet()) {
+            if (!names.test(entry.getKey())) {
+                continue;
+            }
+            out.append(String.format("    %-40s %d\n", entry.getKey(), entry.getValue().sum()));
+        }
+        for (Map.Entry<String, LatencyHistogram> entry: new TreeMap<>(HISTOGRAMS).entrySet()) {
+            if (!names.test(entry.getKey())) {
+                continue;
+            }
+            LatencyHistogram histogram = entry.getValue();
+            out.append(String.format(
+                    "    %-40s n=%d mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus\n",
+                    entry.getKey(), histogram.getCount(), histogram.getMeanNs() / 1e3,
+                    histogram.getPercentileNs(0.5) / 1e3, histogram.getPercentileNs(0.99) / 1e3,
+                    histogram.getMaxNs() / 1e3
+            ));
+        }
+        return out.toString();
+    }
+
+    private static void scheduleDumps() {
+        String csv = System.getProperty("carpool.metrics.csv");
+        long period = Long.getLong("carpool.metrics.period", csv == null ? 0 : DEFAULT_CSV_PERIOD_MS);
+        if (period <= 0) {
+            return;
+        }
+
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(() -> {
+            if (csv == null) {
+                Log.info("metrics:\n%s", format());
+            } else {
+                appendCsv(csv);
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private static void appendCsv(String file) {
+        boolean fresh = new File(file).length() == 0;
+        try (PrintWriter out = new PrintWriter(new FileWriter(file, true))) {
+            if (fresh) {
+                out.println("elapsed_ms,name,count,mean_ns,p50_ns,p99_ns,max_ns");
+            }
+            long elapsed = System.currentTimeMillis() - START_MS;
+            for (Map.Entry<String, LongAdder> entry: new TreeMap<>(COUNTERS).entrySet()) {
+                out.printf("%d,%s,%d,,,,\n", elapsed, entry.getKey(), entry.getValue().sum());
+            }
+            for (Map.Entry<String, LatencyHistogram> entry: new TreeMap<>(HISTOGRAMS).entrySet()) {
+                LatencyHistogram histogram = entry.getValue();
+                out.printf(
+                        "%d,%s,%d,%.0f,%d,%d,%d\n", elapsed, entry.getKey(), histogram.getCount(),
+                        histogram.getMeanNs(), histogram.getPercentileNs(0.5), histogram.getPercentileNs(0.99),
+                        histogram.getMaxNs()
+                );
+            }
+        } catch (IOException e) {
+            Log.warn("metrics - cannot write %s: %s\n", file, e);
+        }
+    }
+
+    private static void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MetricsMBean(), name);
+            }
+        } catch (JMException e) {
+            Log.warn("metrics - cannot register %s: %s\n", OBJECT_NAME, e);
+        }
+    }
+
+    // read-only view whose attributes follow the registry: counters by name, histograms as
+    // <name>.count, <name>.mean, <name>.p50, <name>.p99 and <name>.max in nanoseconds
+    private static class MetricsMBean implements DynamicMBean {
+
+        private static final String[] HISTOGRAM_FIELDS = { "count", "mean", "p50", "p99", "max" };
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            LongAdder counter = COUNTERS.get(attribute);
+            if (counter != null) {
+                return counter.sum();
+            }
+
+            int dot = attribute.lastIndexOf('.');
+            LatencyHistogram histogram = dot < 0 ? null : HISTOGRAMS.get(attribute.substring(0, dot));
+            if (histogram != null) {
+                switch (attribute.substring(dot + 1)) {
+                    case "count": return histogram.getCount();
+                    case "mean": return (long) histogram.getMeanNs();
+                    case "p50": return histogram.getPercentileNs(0.5);
+                    case "p99": return histogram.getPercentileNs(0.99);
+                    case "max": return histogram.getMaxNs();
+                }
+            }
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute: attributes) {
+                try {
+                    list.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException e) {
+                    // skipped as the interface allows
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (String name: new TreeMap<>(COUNTERS).keySet()) {
+                attributes.add(new MBeanAttributeInfo(name, "long", "counter", true, false, false));
+            }
+            for (String name: new TreeMap<>(HISTOGRAMS).keySet()) {
+                for (String field: HISTOGRAM_FIELDS) {
+                    attributes.add(new MBeanAttributeInfo(
+                            name + "." + field, "long",
+                            field.equals("count") ? "samples" : "latency " + field + " in ns", true, false, false
+                    ));
+                }
+            }
+            return new MBeanInfo(
+                    Metrics.class.getName(), "Carpool negotiation metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, null, null
+            );
+        }
+    }
+}
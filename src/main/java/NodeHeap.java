@@ -0,0 +1,71 @@
+import java.util.Arrays;
+
+class NodeHeap {
+
+    private int[] nodes;
+    private double[] keys;
+    private int size;
+
+    NodeHeap(int capacity) {
+        nodes = new int[Math.max(capacity, 16)];
+        keys = new double[nodes.length];
+        size = 0;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    double peekKey() {
+        return keys[0];
+    }
+
+    int peekNode() {
+        return nodes[0];
+    }
+
+    // entries are never decreased in place: callers push again and skip stale entries on pop
+    void push(int node, double key) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (keys[parent] <= key) {
+                break;
+            }
+            nodes[i] = nodes[parent];
+            keys[i] = keys[parent];
+            i = parent;
+        }
+        nodes[i] = node;
+        keys[i] = key;
+    }
+
+    void pop() {
+        int node = nodes[--size];
+        double key = keys[size];
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && keys[child + 1] < keys[child]) {
+                ++child;
+            }
+            if (key <= keys[child]) {
+                break;
+            }
+            nodes[i] = nodes[child];
+            keys[i] = keys[child];
+            i = child;
+        }
+        nodes[i] = node;
+        keys[i] = key;
+    }
+}
@@ -0,0 +1,45 @@
+// Which districts a container owns: district ids are dealt round-robin over the containers,
+// and drivers live in the container that owns the district they start from
+public class Partition {
+
+    public static final Partition ALL = new Partition(0, 1);
+
+    public final int index;
+    public final int count;
+
+    public Partition(int index, int count) {
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("Bad partition " + index + " of " + count);
+        }
+        this.index = index;
+        this.count = count;
+    }
+
+    public boolean owns(int districtId) {
+        return Math.floorMod(districtId, count) == index;
+    }
+
+    public boolean isSingle() {
+        return count == 1;
+    }
+
+    // agent arguments such as "partition=1", "partitions=4"
+    public static Partition fromArguments(Object[] args) {
+        int index = 0;
+        int count = 1;
+        for (Object arg: args == null ? new Object[0] : args) {
+            String[] option = arg.toString().split("=", 2);
+            if (option.length == 2 && option[0].equals("partition")) {
+                index = Integer.parseInt(option[1]);
+            } else if (option.length == 2 && option[0].equals("partitions")) {
+                count = Integer.parseInt(option[1]);
+            }
+        }
+        return new Partition(index, count);
+    }
+
+    @Override
+    public String toString() {
+        return "partition " + index + " of " + count;
+    }
+}
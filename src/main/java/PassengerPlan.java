@@ -0,0 +1,34 @@
+import jade.core.AID;
+import org.json.JSONObject;
+
+class PassengerPlan {
+    public final AID aid;
+    public final MapModel.Node from;
+    public final MapModel.Node to;
+    public final double payment;
+    public final TimeWindow departure;
+    public final TimeWindow arrival;
+
+    public PassengerPlan(AID aid, MapModel.Node from, MapModel.Node to, double payment) {
+        this(aid, from, to, payment, TimeWindow.ANY, TimeWindow.ANY);
+    }
+
+    public PassengerPlan(
+            AID aid, MapModel.Node from, MapModel.Node to, double payment, TimeWindow departure, TimeWindow arrival
+    ) {
+        this.aid = aid;
+        this.from = from;
+        this.to = to;
+        this.payment = payment;
+        this.departure = departure;
+        this.arrival = arrival;
+    }
+
+    public JSONObject toJSON() {
+        return new JSONObject()
+                .put("name", aid.getName())
+                .put("from", from.id)
+                .put("to", to.id)
+                .put("payment", payment);
+    }
+}
@@ -0,0 +1,71 @@
+import java.util.*;
+import java.util.stream.Collectors;
+
+import jade.core.AID;
+
+class Plan {
+    private final MapModel.Route route;
+    private final List<Destination> destinations;
+    private final Map<AID, Double> payments;
+    private final double totalPayment;
+
+    public Plan(
+            MapModel.Route route,
+            List<Destination> destinations,
+            Map<AID, Double> payments,
+            double payment
+    ) {
+        this.route = route;
+        this.destinations = destinations;
+        this.payments = payments;
+        this.totalPayment = payment;
+    }
+
+    public MapModel.Route getRoute() {
+        return route;
+    }
+
+    public List<Destination> getDestinations() {
+        return destinations;
+    }
+
+    public Map<AID, Double> getPayments() {
+        return payments;
+    }
+
+    public double getTotalPayment() {
+        return totalPayment;
+    }
+
+    public double getIncome() {
+        return totalPayment - route.getCost();
+    }
+
+    // passengers that negotiated with this driver; riders they bring along in a bundle pay them, not this driver
+    public Set<AID> getPassengers() {
+        return new HashSet<>(payments.keySet());
+    }
+
+    public List<PassengerPlan> getPassengerPlans() {
+        return getRiders().stream()
+                .filter(plan -> payments.containsKey(plan.aid))
+                .collect(Collectors.toList());
+    }
+
+    // everyone who has a seat in this vehicle, bundled riders included
+    public List<PassengerPlan> getRiders() {
+        ArrayList<PassengerPlan> plans = new ArrayList<>();
+        for (Destination source: destinations) {
+            if (source.tag != Destination.Tag.SOURCE) {
+                continue;
+            }
+            Destination sink = destinations.stream()
+                    .filter(dst -> dst.aid.equals(source.aid) && dst.tag == Destination.Tag.SINK)
+                    .collect(Collectors.toList())
+                    .get(0);
+            double payment = payments.getOrDefault(source.aid, 0.0);
+            plans.add(new PassengerPlan(source.aid, source.node, sink.node, payment, source.window, sink.window));
+        }
+        return plans;
+    }
+}
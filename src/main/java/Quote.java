@@ -0,0 +1,104 @@
+import java.util.*;
+
+import jade.core.AID;
+
+class Quote {
+
+    // planner insertions plus the vehicle route, the route computation behind every cfp answer
+    private static final LatencyHistogram PRICE_LATENCY = Metrics.histogram("quote.priceBundle");
+
+    public final AID passenger;
+    public final Plan plan;
+    public final double payment;
+    private final MapModel map;
+
+    // the passenger pays the change of the vehicle route cost plus the driver premium
+    public static Quote price(
+            MapModel map, RoutePlanner planner, MapModel.Intention vehicle, Plan current,
+            AID passenger, MapModel.Intention trip, double premium
+    ) {
+        return priceBundle(map, planner, vehicle, current, passenger, trip, Collections.emptyList(), premium);
+    }
+
+    // the passenger also brings its own riders; all of them are inserted into one route and the passenger pays
+    // for the whole bundle, so the riders settle with it and not with this driver
+    public static Quote priceBundle(
+            MapModel map, RoutePlanner planner, MapModel.Intention vehicle, Plan current,
+            AID passenger, MapModel.Intention trip, List<PassengerPlan> riders, double premium
+    ) {
+        long start = Metrics.start();
+        Quote quote = insertAndPrice(map, planner, vehicle, current, passenger, trip, riders, premium);
+        PRICE_LATENCY.recordSince(start);
+        return quote;
+    }
+
+    private static Quote insertAndPrice(
+            MapModel map, RoutePlanner planner, MapModel.Intention vehicle, Plan current,
+            AID passenger, MapModel.Intention trip, List<PassengerPlan> riders, double premium
+    ) {
+        // the planners keep every pick-up and drop-off in its window or find no plan at all
+        List<Destination> destinations = planner.plan(
+                vehicle, current.getDestinations(),
+                new Destination(passenger, Destination.Tag.SOURCE, trip.from, trip.departure),
+                new Destination(passenger, Destination.Tag.SINK, trip.to, trip.arrival)
+        );
+        for (int i = 0; i < riders.size() && destinations != null; ++i) {
+            PassengerPlan rider = riders.get(i);
+            destinations = planner.plan(
+                    vehicle, destinations,
+                    new Destination(rider.aid, Destination.Tag.SOURCE, rider.from, rider.departure),
+                    new Destination(rider.aid, Destination.Tag.SINK, rider.to, rider.arrival)
+            );
+        }
+        if (destinations == null) {
+            return null;
+        }
+
+        MapModel.Route vehicleRoute = getVehicleRoute(map, vehicle, destinations);
+        double payment = Math.abs(current.getRoute().getCost() - vehicleRoute.getCost()) + premium;
+        Map<AID, Double> payments = new HashMap<>(current.getPayments());
+        payments.put(passenger, payment);
+        double totalPayment = current.getTotalPayment() + payment;
+
+        return new Quote(map, passenger, new Plan(vehicleRoute, destinations, payments, totalPayment), payment);
+    }
+
+    public static MapModel.Route getVehicleRoute(
+            MapModel map, MapModel.Intention vehicle, List<Destination> destinations
+    ) {
+        ArrayList<MapModel.Node> waypoints = new ArrayList<>(destinations.size() + 2);
+        waypoints.add(vehicle.from);
+        for (Destination dst: destinations) {
+            waypoints.add(dst.node);
+        }
+        waypoints.add(vehicle.to);
+        return map.getRoute(waypoints);
+    }
+
+    public boolean isProfitable(Plan current) {
+        return plan.getIncome() >= current.getIncome();
+    }
+
+    // the stretch of the vehicle route the passenger rides, through the stops of everyone picked up or dropped
+    // off on the way
+    public MapModel.Route getPassengerRoute() {
+        ArrayList<MapModel.Node> waypoints = new ArrayList<>();
+        for (Destination dst: plan.getDestinations()) {
+            boolean own = dst.aid.equals(passenger);
+            if (own || !waypoints.isEmpty()) {
+                waypoints.add(dst.node);
+            }
+            if (own && dst.tag == Destination.Tag.SINK) {
+                break;
+            }
+        }
+        return map.getRoute(waypoints);
+    }
+
+    private Quote(MapModel map, AID passenger, Plan plan, double payment) {
+        this.map = map;
+        this.passenger = passenger;
+        this.plan = plan;
+        this.payment = payment;
+    }
+}
@@ -0,0 +1,123 @@
+import java.util.Locale;
+
+// Folds the reports of finished agents into running totals as they arrive, so the logging service keeps
+// nothing per agent; savings (initial route cost minus the cost driven in the end) go into a fixed histogram
+public class ResultAggregator {
+
+    private final int expected;
+    private final double histogramMin;
+    private final double bucketWidth;
+    // one bucket below the range and one above it at the ends
+    private final long[] buckets;
+
+    private int drivers;
+    private int passengers;
+    private long carried;
+    private double initialCost;
+    private double totalCost;
+    private double totalIncome;
+
+    private long savingCount;
+    private double savingMean;
+    private double savingM2;
+    private double savingMin = Double.POSITIVE_INFINITY;
+    private double savingMax = Double.NEGATIVE_INFINITY;
+
+    public ResultAggregator(int expected, double histogramMin, double bucketWidth, int bucketCount) {
+        this.expected = expected;
+        this.histogramMin = histogramMin;
+        this.bucketWidth = bucketWidth;
+        this.buckets = new long[bucketCount + 2];
+    }
+
+    public void add(ContentCodec.Report report) {
+        double driven = 0;
+        if (report.senderType.equals(ContentCodec.Report.DRIVER)) {
+            ++drivers;
+            carried += report.passengers.size();
+            driven = report.cost;
+            totalCost += report.cost;
+            totalIncome += report.income;
+        } else {
+            ++passengers;
+        }
+        initialCost += report.initialCost;
+        addSaving(report.initialCost - driven);
+    }
+
+    private void addSaving(double saving) {
+        // Welford's update keeps mean and variance stable without storing the samples
+        ++savingCount;
+        double delta = saving - savingMean;
+        savingMean += delta / savingCount;
+        savingM2 += delta * (saving - savingMean);
+        savingMin = Math.min(savingMin, saving);
+        savingMax = Math.max(savingMax, saving);
+
+        int bucket = (int) Math.floor((saving - histogramMin) / bucketWidth) + 1;
+        ++buckets[Math.max(0, Math.min(buckets.length - 1, bucket))];
+    }
+
+    public int getReceived() {
+        return drivers + passengers;
+    }
+
+    public boolean isComplete() {
+        return getReceived() >= expected;
+    }
+
+    public int getDriverCount() {
+        return drivers;
+    }
+
+    public int getPassengerCount() {
+        return passengers;
+    }
+
+    public double getInitialCost() {
+        return initialCost;
+    }
+
+    public double getTotalCost() {
+        return totalCost;
+    }
+
+    public double getTotalIncome() {
+        return totalIncome;
+    }
+
+    public double getSavingMean() {
+        return savingMean;
+    }
+
+    public double getSavingStd() {
+        return savingCount < 2 ? 0 : Math.sqrt(savingM2 / (savingCount - 1));
+    }
+
+    public String snapshot() {
+        return String.format(Locale.ROOT,
+                "received=%d/%d; drivers=%d; passengers=%d; carried=%d; " +
+                "initial cost=%.1f; resulting cost=%.1f; income=%.1f; saving mean=%.3f; std=%.3f",
+                getReceived(), expected, drivers, passengers, carried,
+                initialCost, totalCost, totalIncome, getSavingMean(), getSavingStd()
+        );
+    }
+
+    public String distribution() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.ROOT,
+                "    min=%.1f; max=%.1f\n", savingCount == 0 ? 0 : savingMin, savingCount == 0 ? 0 : savingMax
+        ));
+        for (int i = 0; i < buckets.length; ++i) {
+            if (buckets[i] == 0) {
+                continue;
+            }
+            double from = histogramMin + (i - 1) * bucketWidth;
+            String range = i == 0 ? String.format(Locale.ROOT, "< %.1f", histogramMin)
+                    : i == buckets.length - 1 ? String.format(Locale.ROOT, ">= %.1f", from)
+                    : String.format(Locale.ROOT, "[%.1f, %.1f)", from, from + bucketWidth);
+            builder.append(String.format(Locale.ROOT, "    %-14s %d\n", range, buckets[i]));
+        }
+        return builder.toString();
+    }
+}
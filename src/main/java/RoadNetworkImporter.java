@@ -0,0 +1,492 @@
+import java.io.*;
+import java.util.*;
+
+// Streams a road network into a compact-only MapModel. The file is read twice, first to count node degrees and
+// then to lay every road straight into CSR, so memory is the adjacency itself plus a few ints per node however
+// large the file is. Supported formats:
+//     dimacs  the shortest-path challenge .gr files: "c" comments, "p sp <nodes> <arcs>", "a <from> <to> <weight>"
+//             with ids from 1
+//     csv     "from,to,weight" lines with non-negative integer ids; a header line and further columns are ignored
+// Roads are two-way, parallel roads keep the shortest, and only the largest connected part is kept, renumbered
+// from 0. The files carry no districts, so the center is the part closest to a central node and the rest is split
+// into suburbs grown from random seeds
+//
+// usage: RoadNetworkImporter in=<file> out=<map file> [format=dimacs|csv] [scale=1] [center=0.01] [districts=10]
+//     [seed=21]; scale converts the file's weights to km, e.g. 0.001 for meters
+public class RoadNetworkImporter {
+
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final double[] POWERS_OF_TEN = new double[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; ++i) {
+            POWERS_OF_TEN[i] = 10 * POWERS_OF_TEN[i - 1];
+        }
+    }
+
+    public enum Format { DIMACS, CSV }
+
+    private interface RoadVisitor {
+        void visit(int from, int to, double weight);
+    }
+
+    private final File file;
+    private final Format format;
+    private final double scale;
+
+    private int[] offsets;
+    private int[] targets;
+    private float[] weights;
+    private int nodeCount;
+    private long roadCount;
+
+    public RoadNetworkImporter(File file, Format format, double scale) {
+        this.file = file;
+        this.format = format;
+        this.scale = scale;
+    }
+
+    public static Format detectFormat(File file) {
+        return file.getName().endsWith(".gr") ? Format.DIMACS : Format.CSV;
+    }
+
+    public MapModel read(double centerFraction, int districtN, long seed) throws IOException {
+        // first pass: degrees, counted one slot ahead so that the prefix sum turns them into offsets
+        offsets = new int[1024];
+        scan((u, v, w) -> {
+            int max = Math.max(u, v);
+            if (max + 2 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, Math.max(2 * offsets.length, max + 2));
+            }
+            nodeCount = Math.max(nodeCount, max + 1);
+            ++offsets[u + 1];
+            ++offsets[v + 1];
+            ++roadCount;
+        });
+        if (nodeCount == 0) {
+            throw new IOException("No roads in " + file);
+        }
+        offsets = Arrays.copyOf(offsets, nodeCount + 1);
+        for (int i = 0; i < nodeCount; ++i) {
+            if (offsets[i + 1] > Integer.MAX_VALUE - offsets[i]) {
+                throw new IOException("Too many roads in " + file + " for one graph");
+            }
+            offsets[i + 1] += offsets[i];
+        }
+
+        // second pass: both directions of every road go straight to their slots
+        targets = new int[offsets[nodeCount]];
+        weights = new float[offsets[nodeCount]];
+        int[] next = Arrays.copyOf(offsets, nodeCount);
+        scan((u, v, w) -> {
+            targets[next[u]] = v;
+            weights[next[u]++] = (float) w;
+            targets[next[v]] = u;
+            weights[next[v]++] = (float) w;
+        });
+
+        removeParallelRoads();
+        keepLargestComponent();
+        return MapModel.fromCompactGraph(CompactGraph.fromCsr(
+                assignDistricts(centerFraction, districtN, seed), offsets, targets, weights
+        ));
+    }
+
+    public long getRoadCount() {
+        return roadCount;
+    }
+
+    private void scan(RoadVisitor visitor) throws IOException {
+        try (Lines lines = new Lines(new FileInputStream(file))) {
+            boolean first = true;
+            while (lines.next()) {
+                if (lines.isEmpty()) {
+                    continue;
+                }
+                int from;
+                int to;
+                if (format == Format.DIMACS) {
+                    if (lines.peek() != 'a') {
+                        continue;
+                    }
+                    lines.skip();
+                    from = lines.readId(file) - 1;
+                    to = lines.readId(file) - 1;
+                } else {
+                    // a header starts with a name rather than a node id
+                    if (first && !lines.startsWithDigit()) {
+                        first = false;
+                        continue;
+                    }
+                    from = lines.readId(file);
+                    to = lines.readId(file);
+                }
+                first = false;
+
+                // adding 0 turns -0 into 0, which the parallel road keys rely on
+                double weight = lines.readDouble(file) * scale + 0.0;
+                if (from < 0 || to < 0 || !(weight >= 0) || Double.isInfinite(weight)) {
+                    throw new IOException("Bad road in " + file + " at line " + lines.getNumber());
+                }
+                if (from != to) {
+                    visitor.visit(from, to, weight);
+                }
+            }
+        }
+    }
+
+    // sorting a node's roads as (target, weight bits) keys puts the shortest of parallel roads first, since
+    // non-negative floats order like their bits; the adjacency is compacted in place
+    private void removeParallelRoads() {
+        long[] keys = new long[16];
+        int write = 0;
+        for (int u = 0; u < nodeCount; ++u) {
+            int begin = offsets[u];
+            int degree = offsets[u + 1] - begin;
+            if (degree > keys.length) {
+                keys = new long[Math.max(degree, 2 * keys.length)];
+            }
+            for (int i = 0; i < degree; ++i) {
+                keys[i] = (long) targets[begin + i] << 32 | (Float.floatToIntBits(weights[begin + i]) & 0xFFFFFFFFL);
+            }
+            Arrays.sort(keys, 0, degree);
+
+            offsets[u] = write;
+            for (int i = 0; i < degree; ++i) {
+                int target = (int) (keys[i] >>> 32);
+                if (i > 0 && target == (int) (keys[i - 1] >>> 32)) {
+                    continue;
+                }
+                targets[write] = target;
+                weights[write] = Float.intBitsToFloat((int) keys[i]);
+                ++write;
+            }
+        }
+        offsets[nodeCount] = write;
+    }
+
+    // nodes outside the largest connected part could never be reached, so they are dropped and the rest is
+    // renumbered in order, again in place
+    private void keepLargestComponent() {
+        int[] component = new int[nodeCount];
+        Arrays.fill(component, -1);
+        int[] queue = new int[nodeCount];
+        int largest = -1;
+        int largestSize = 0;
+        int components = 0;
+        for (int s = 0; s < nodeCount; ++s) {
+            if (component[s] >= 0) {
+                continue;
+            }
+            int size = bfs(s, component, components, queue);
+            if (size > largestSize) {
+                largest = components;
+                largestSize = size;
+            }
+            ++components;
+        }
+
+        int[] ids = queue;
+        int kept = 0;
+        for (int u = 0; u < nodeCount; ++u) {
+            ids[u] = component[u] == largest ? kept++ : -1;
+        }
+        int write = 0;
+        for (int u = 0; u < nodeCount; ++u) {
+            if (ids[u] < 0) {
+                continue;
+            }
+            int begin = offsets[u];
+            int end = offsets[u + 1];
+            offsets[ids[u]] = write;
+            for (int e = begin; e < end; ++e) {
+                targets[write] = ids[targets[e]];
+                weights[write] = weights[e];
+                ++write;
+            }
+        }
+        offsets[kept] = write;
+        nodeCount = kept;
+    }
+
+    // labels the nodes reached from s and returns how many there are; queue holds them in visiting order
+    private int bfs(int s, int[] labels, int label, int[] queue) {
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = s;
+        labels[s] = label;
+        while (head < tail) {
+            int u = queue[head++];
+            for (int e = offsets[u]; e < offsets[u + 1]; ++e) {
+                int v = targets[e];
+                if (labels[v] < 0) {
+                    labels[v] = label;
+                    queue[tail++] = v;
+                }
+            }
+        }
+        return tail;
+    }
+
+    // the central node is half way along a double sweep (farthest from any node, then farthest from that);
+    // the center is the nodes nearest to it in hops, and suburbs grow from random seeds until they meet
+    private MapModel.Node[] assignDistricts(double centerFraction, int districtN, long seed) {
+        int n = nodeCount;
+        int[] labels = new int[n];
+        int[] queue = new int[n];
+        int[] parents = new int[n];
+
+        int a = farthest(0, labels, queue, parents);
+        int b = farthest(a, labels, queue, parents);
+        int hops = 0;
+        for (int v = b; v != a; v = parents[v]) {
+            ++hops;
+        }
+        int root = b;
+        for (int i = 0; i < hops / 2; ++i) {
+            root = parents[root];
+        }
+
+        int centerN = (int) Math.max(1, Math.min(n, Math.round(centerFraction * n)));
+        Arrays.fill(labels, -1);
+        bfs(root, labels, 0, queue);
+        int[] districts = new int[n];
+        for (int i = 0; i < centerN; ++i) {
+            districts[queue[i]] = 1;
+        }
+
+        // multi-source BFS from the suburb seeds, picked among the nodes past the center in the BFS order above;
+        // it passes through the center but does not relabel it
+        Random rnd = new Random(seed);
+        int seeds = Math.min(Math.max(1, districtN - 1), n - centerN);
+        int[] frontier = parents;
+        Arrays.fill(labels, -1);
+        int head = 0;
+        int tail = 0;
+        while (tail < seeds) {
+            int s = queue[centerN + rnd.nextInt(n - centerN)];
+            if (labels[s] < 0) {
+                labels[s] = tail + 2;
+                frontier[tail++] = s;
+            }
+        }
+        while (head < tail) {
+            int u = frontier[head++];
+            for (int e = offsets[u]; e < offsets[u + 1]; ++e) {
+                int v = targets[e];
+                if (labels[v] < 0) {
+                    labels[v] = labels[u];
+                    frontier[tail++] = v;
+                }
+            }
+        }
+
+        MapModel.Node[] nodes = new MapModel.Node[n];
+        for (int u = 0; u < n; ++u) {
+            nodes[u] = districts[u] == 1
+                    ? new MapModel.Node(u, 1, MapModel.DistrictType.Center)
+                    : new MapModel.Node(u, labels[u], MapModel.DistrictType.Suburb);
+        }
+        return nodes;
+    }
+
+    private int farthest(int s, int[] labels, int[] queue, int[] parents) {
+        Arrays.fill(labels, -1);
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = s;
+        labels[s] = 0;
+        parents[s] = s;
+        while (head < tail) {
+            int u = queue[head++];
+            for (int e = offsets[u]; e < offsets[u + 1]; ++e) {
+                int v = targets[e];
+                if (labels[v] < 0) {
+                    labels[v] = 0;
+                    parents[v] = u;
+                    queue[tail++] = v;
+                }
+            }
+        }
+        return queue[tail - 1];
+    }
+
+    // one line at a time in a reusable byte buffer; fields are split by spaces, tabs, commas or semicolons
+    private static class Lines implements Closeable {
+        private final InputStream in;
+        private final byte[] buffer = new byte[BUFFER_BYTES];
+        private int bufferPos;
+        private int bufferEnd;
+        private byte[] line = new byte[256];
+        private int length;
+        private int pos;
+        private long number;
+
+        Lines(InputStream in) {
+            this.in = in;
+        }
+
+        boolean next() throws IOException {
+            length = 0;
+            pos = 0;
+            while (true) {
+                if (bufferPos == bufferEnd) {
+                    bufferEnd = in.read(buffer);
+                    bufferPos = 0;
+                    if (bufferEnd <= 0) {
+                        bufferEnd = 0;
+                        ++number;
+                        return length > 0;
+                    }
+                }
+                byte b = buffer[bufferPos++];
+                if (b == '\n') {
+                    ++number;
+                    return true;
+                }
+                if (b != '\r') {
+                    if (length == line.length) {
+                        line = Arrays.copyOf(line, 2 * length);
+                    }
+                    line[length++] = b;
+                }
+            }
+        }
+
+        long getNumber() {
+            return number;
+        }
+
+        boolean isEmpty() {
+            skipSeparators();
+            return pos == length;
+        }
+
+        byte peek() {
+            skipSeparators();
+            return pos < length ? line[pos] : 0;
+        }
+
+        boolean startsWithDigit() {
+            byte b = peek();
+            return b >= '0' && b <= '9';
+        }
+
+        void skip() {
+            skipSeparators();
+            while (pos < length && !isSeparator(line[pos])) {
+                ++pos;
+            }
+        }
+
+        int readId(File file) throws IOException {
+            skipSeparators();
+            long value = 0;
+            int start = pos;
+            while (pos < length && line[pos] >= '0' && line[pos] <= '9') {
+                value = 10 * value + (line[pos++] - '0');
+                if (value > Integer.MAX_VALUE - 2) {
+                    throw new IOException("Node id out of range in " + file + " at line " + number);
+                }
+            }
+            if (pos == start || (pos < length && !isSeparator(line[pos]))) {
+                throw new IOException("Expected a node id in " + file + " at line " + number);
+            }
+            return (int) value;
+        }
+
+        // plain decimals are parsed in place, anything else (exponents, NaN) goes through Double.parseDouble
+        double readDouble(File file) throws IOException {
+            skipSeparators();
+            int start = pos;
+            long digits = 0;
+            int fractionDigits = -1;
+            while (pos < length && !isSeparator(line[pos])) {
+                byte b = line[pos++];
+                if (b >= '0' && b <= '9' && digits < Long.MAX_VALUE / 10 - 9) {
+                    digits = 10 * digits + (b - '0');
+                    if (fractionDigits >= 0) {
+                        ++fractionDigits;
+                    }
+                } else if (b == '.' && fractionDigits < 0) {
+                    fractionDigits = 0;
+                } else {
+                    digits = -1;
+                    break;
+                }
+            }
+            if (digits >= 0 && pos > start && fractionDigits < 19) {
+                return fractionDigits <= 0 ? digits : digits / POWERS_OF_TEN[fractionDigits];
+            }
+
+            while (pos < length && !isSeparator(line[pos])) {
+                ++pos;
+            }
+            try {
+                return Double.parseDouble(new String(line, start, pos - start, "US-ASCII"));
+            } catch (NumberFormatException e) {
+                throw new IOException("Expected a weight in " + file + " at line " + number);
+            }
+        }
+
+        private void skipSeparators() {
+            while (pos < length && isSeparator(line[pos])) {
+                ++pos;
+            }
+        }
+
+        private static boolean isSeparator(byte b) {
+            return b == ' ' || b == '\t' || b == ',' || b == ';';
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg: args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                System.out.println("Error: expected key=value, got " + arg);
+                System.exit(1);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        if (!options.containsKey("in") || !options.containsKey("out")) {
+            System.out.println("Error: expected in=<file> out=<map file>");
+            System.exit(1);
+        }
+
+        File in = new File(options.get("in"));
+        File out = new File(options.get("out"));
+        try {
+            Format format = options.containsKey("format")
+                    ? Format.valueOf(options.get("format").toUpperCase())
+                    : detectFormat(in);
+            RoadNetworkImporter importer = new RoadNetworkImporter(
+                    in, format, Double.parseDouble(options.getOrDefault("scale", "1"))
+            );
+
+            long start = System.nanoTime();
+            MapModel map = importer.read(
+                    Double.parseDouble(options.getOrDefault("center", "0.01")),
+                    Integer.parseInt(options.getOrDefault("districts", "10")),
+                    Long.parseLong(options.getOrDefault("seed", "21"))
+            );
+            long readNs = System.nanoTime() - start;
+            MapFile.write(map, null, out);
+            System.out.printf(
+                    "%d roads read in %d ms; %d nodes and %d roads written to %s\n",
+                    importer.getRoadCount(), readNs / 1000000,
+                    map.getNodes().size(), map.getCompactGraph().edgeCount(), out
+            );
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Error: " + e);
+            System.exit(1);
+        }
+    }
+}
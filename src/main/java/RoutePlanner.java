@@ -0,0 +1,10 @@
+import java.util.List;
+
+interface RoutePlanner {
+
+    // returns the stop sequence serving `stops` plus the new source/sink pair, or null if there is none
+    List<Destination> plan(MapModel.Intention vehicle, List<Destination> stops, Destination source, Destination sink);
+
+    // seats for passengers, the driver not counted
+    int getCapacity();
+}
@@ -0,0 +1,8 @@
+import java.util.List;
+
+public interface RoutingEngine {
+
+    double getDistance(MapModel.Node source, MapModel.Node sink);
+
+    List<MapModel.Node> getPath(MapModel.Node source, MapModel.Node sink);
+}
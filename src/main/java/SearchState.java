@@ -0,0 +1,43 @@
+import java.util.Arrays;
+
+class SearchState {
+
+    final double[] dist;
+    final int[] parent;
+    final NodeHeap heap;
+    private int[] touched;
+    private int touchedCount;
+
+    SearchState(int n) {
+        dist = new double[n];
+        parent = new int[n];
+        heap = new NodeHeap(64);
+        touched = new int[64];
+        Arrays.fill(dist, Double.MAX_VALUE);
+    }
+
+    // restores only the entries written by the previous search instead of refilling whole arrays
+    void reset() {
+        for (int i = 0; i < touchedCount; ++i) {
+            dist[touched[i]] = Double.MAX_VALUE;
+        }
+        touchedCount = 0;
+        heap.clear();
+    }
+
+    void relax(int node, double d, int from) {
+        if (dist[node] == Double.MAX_VALUE) {
+            if (touchedCount == touched.length) {
+                touched = Arrays.copyOf(touched, touchedCount * 2);
+            }
+            touched[touchedCount++] = node;
+        }
+        dist[node] = d;
+        parent[node] = from;
+        heap.push(node, d);
+    }
+
+    double minKey() {
+        return heap.isEmpty() ? Double.MAX_VALUE : heap.peekKey();
+    }
+}
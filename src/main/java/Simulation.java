@@ -0,0 +1,492 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import jade.core.AID;
+
+// Runs the driver contract-net negotiation in one thread with an event queue and simulated time,
+// without JADE agents, ACL messages or the DF
+public class Simulation {
+
+    private static final long MESSAGE_LATENCY_MS = 1;
+    private static final int FULL_SCAN_THRESHOLD = 4;
+    private static final int ORACLE_MAX_NODES = 4096;
+    private static final int LEG_CACHE_CAPACITY = 1 << 16;
+
+    public static class Result {
+        public int drivers;
+        public int passengers;
+        public double initialCost;
+        public double totalCost;
+        public long rounds;
+        public long messages;
+        public long cfps;
+        public long proposals;
+        public long simulatedTimeMs;
+        public long wallTimeMs;
+
+        public void print() {
+            System.out.printf("------------------------------\n");
+            System.out.printf("Drivers: %d; passengers: %d\n", drivers, passengers);
+            System.out.printf("Negotiation rounds: %d; messages: %d\n", rounds, messages);
+            System.out.printf(
+                    "Cfps: %d; proposals: %d; hit rate: %.3f\n",
+                    cfps, proposals, cfps == 0 ? 0.0 : (double) proposals / cfps
+            );
+            System.out.printf("Simulated time: %d ms; wall time: %d ms\n", simulatedTimeMs, wallTimeMs);
+            System.out.printf("Baseline route cost: %f\n", initialCost);
+            System.out.printf("Resulting route cost: %f\n", totalCost);
+        }
+    }
+
+    private enum EventType {
+        TICK, SEARCH
+    }
+
+    private static class Event {
+        final long time;
+        final long seq;
+        final EventType type;
+        final SimDriver driver;
+        // ticks superseded by a later reschedule of the same driver are skipped
+        final long token;
+
+        Event(long time, long seq, EventType type, SimDriver driver, long token) {
+            this.time = time;
+            this.seq = seq;
+            this.type = type;
+            this.driver = driver;
+            this.token = token;
+        }
+    }
+
+    private static class Offer {
+        final SimDriver responder;
+        final Quote quote;
+
+        Offer(SimDriver responder, Quote quote) {
+            this.responder = responder;
+            this.quote = quote;
+        }
+    }
+
+    private final MapModel map;
+    private final RoutePlanner planner;
+    private final int maxCfpCount;
+    private final Random rnd;
+    private final SimDriver[] drivers;
+    private final Map<AID, SimDriver> byAid;
+    private final PriorityQueue<Event> events;
+    private final Result result;
+    // null means random targeting over all registered drivers
+    private CandidateIndex candidates;
+    // false replays the fixed CHECK_PROFIT_PERIOD_MS ticker of the old agents
+    private boolean adaptiveScheduling = true;
+
+    // registered drivers in the first activeCount slots, like the DF registry of the agent version
+    private final SimDriver[] active;
+    private int activeCount;
+    private long now;
+    private long seq;
+
+    public Simulation(MapModel map, List<MapModel.Intention> intentions, int capacity, int maxCfpCount, long seed) {
+        this(map, intentions, DriverAgent.createPlanner(map, capacity), maxCfpCount, seed);
+    }
+
+    public Simulation(
+            MapModel map, List<MapModel.Intention> intentions, RoutePlanner planner, int maxCfpCount, long seed
+    ) {
+        this.map = map;
+        this.planner = planner;
+        this.maxCfpCount = maxCfpCount;
+        this.rnd = new Random(seed);
+        this.events = new PriorityQueue<>((a, b) -> a.time != b.time
+                ? Long.compare(a.time, b.time)
+                : Long.compare(a.seq, b.seq)
+        );
+        this.result = new Result();
+
+        drivers = new SimDriver[intentions.size()];
+        active = new SimDriver[intentions.size()];
+        byAid = new HashMap<>();
+        for (int i = 0; i < drivers.length; ++i) {
+            drivers[i] = new SimDriver(i, intentions.get(i));
+            active[i] = drivers[i];
+            byAid.put(drivers[i].aid, drivers[i]);
+            result.initialCost += drivers[i].getInitialRouteCost();
+        }
+        activeCount = drivers.length;
+    }
+
+    public void useCandidateIndex() {
+        candidates = new CandidateIndex(map);
+        for (int i = 0; i < activeCount; ++i) {
+            candidates.register(active[i].aid, active[i].intention);
+        }
+    }
+
+    public void useFixedPeriodScheduling() {
+        adaptiveScheduling = false;
+    }
+
+    public Result run() {
+        long start = System.nanoTime();
+
+        for (SimDriver driver: drivers) {
+            driver.scheduleTick(adaptiveScheduling
+                    ? rnd.nextInt((int) DriverAgent.SEARCH_MIN_BACKOFF_MS)
+                    : nextTickDelay()
+            );
+        }
+
+        while (!events.isEmpty()) {
+            Event event = events.poll();
+            now = event.time;
+            SimDriver driver = event.driver;
+            if (driver.isDone) {
+                continue;
+            }
+
+            if (event.type == EventType.TICK) {
+                if (event.token == driver.tickToken) {
+                    driver.onTick();
+                }
+            } else {
+                runSearch(driver);
+            }
+        }
+
+        result.simulatedTimeMs = now;
+        result.wallTimeMs = (System.nanoTime() - start) / 1000000;
+        return result;
+    }
+
+    private void schedule(long delay, EventType type, SimDriver driver) {
+        events.add(new Event(now + delay, seq++, type, driver, driver.tickToken));
+    }
+
+    private long nextTickDelay() {
+        return DriverAgent.CHECK_PROFIT_PERIOD_MS + rnd.nextInt(1000);
+    }
+
+    private void runSearch(SimDriver driver) {
+        Plan before = driver.currPlan;
+        driver.searchRunning = true;
+        search(driver);
+        if (!adaptiveScheduling || driver.isDone || driver.waitingFor != null) {
+            return;
+        }
+
+        if (driver.triggered || driver.currPlan != before) {
+            driver.backoffMs = DriverAgent.SEARCH_MIN_BACKOFF_MS;
+        } else {
+            driver.backoffMs = Math.min(2 * driver.backoffMs, DriverAgent.SEARCH_MAX_BACKOFF_MS);
+        }
+        driver.triggered = false;
+        driver.scheduleTick(driver.backoffMs);
+    }
+
+    private void search(SimDriver driver) {
+        ++result.rounds;
+
+        List<SimDriver> receivers = selectReceivers(driver);
+        if (receivers.isEmpty()) {
+            driver.acceptCurrentRoute();
+            return;
+        }
+        result.messages += receivers.size();
+        result.cfps += receivers.size();
+
+        Plan bundle = driver.currPlan;
+        List<PassengerPlan> riders = DriverSearchBehaviour.getBundle(bundle, planner.getCapacity());
+        ArrayList<Offer> offers = new ArrayList<>();
+        for (SimDriver responder: receivers) {
+            Quote quote = responder.handleCfp(driver, riders);
+            if (quote != null) {
+                offers.add(new Offer(responder, quote));
+            }
+        }
+
+        result.proposals += offers.size();
+        if (offers.isEmpty()) {
+            driver.incAttemptCount();
+            driver.searchRunning = false;
+            return;
+        }
+
+        offers.sort((a, b) -> Double.compare(a.quote.payment, b.quote.payment));
+        Offer best = offers.get(0);
+        result.messages += offers.size();
+
+        for (int i = 1; i < offers.size(); ++i) {
+            Offer offer = offers.get(i);
+            offer.responder.blackList.remove(driver.aid);
+            offer.responder.trigger();
+            if (driver.getCurrentIncome() > -DriverSearchBehaviour.getNetPayment(bundle, riders, offer.quote.payment)) {
+                driver.addToBlackList(offer.responder.aid);
+            }
+        }
+
+        double payment = DriverSearchBehaviour.getNetPayment(bundle, riders, best.quote.payment);
+        if (!DriverSearchBehaviour.accept(driver, payment)) {
+            best.responder.blackList.remove(driver.aid);
+            best.responder.trigger();
+            driver.searchRunning = false;
+            return;
+        }
+
+        // accept-proposal, then inform or failure
+        result.messages += 2;
+        if (best.responder.isDone) {
+            schedule(MESSAGE_LATENCY_MS, EventType.SEARCH, driver);
+            return;
+        }
+        best.responder.currPlan = best.quote.plan;
+        best.responder.trigger();
+        driver.waitingFor = best.responder;
+        if (candidates != null) {
+            candidates.deregister(driver.aid);
+        }
+        driver.carried = riders.isEmpty() ? Collections.emptySet() : bundle.getPassengers();
+    }
+
+    private List<SimDriver> selectReceivers(SimDriver driver) {
+        ArrayList<SimDriver> receivers = new ArrayList<>(maxCfpCount);
+        if (candidates != null) {
+            List<AID> aids = candidates.query(
+                    driver.intention, maxCfpCount, aid -> aid == driver.aid || driver.inBlackList(aid), rnd
+            );
+            for (AID aid: aids) {
+                receivers.add(byAid.get(aid));
+            }
+            return receivers;
+        }
+
+        if (activeCount <= FULL_SCAN_THRESHOLD * maxCfpCount) {
+            for (int i = 0; i < activeCount; ++i) {
+                SimDriver candidate = active[i];
+                if (candidate != driver && !driver.inBlackList(candidate.aid)) {
+                    receivers.add(candidate);
+                }
+            }
+            Collections.shuffle(receivers, rnd);
+            return receivers.size() > maxCfpCount ? receivers.subList(0, maxCfpCount) : receivers;
+        }
+
+        // large registries are sampled instead of shuffled in full
+        HashSet<SimDriver> chosen = new HashSet<>();
+        for (int tries = 0; tries < FULL_SCAN_THRESHOLD * maxCfpCount && chosen.size() < maxCfpCount; ++tries) {
+            SimDriver candidate = active[rnd.nextInt(activeCount)];
+            if (candidate != driver && !driver.inBlackList(candidate.aid) && chosen.add(candidate)) {
+                receivers.add(candidate);
+            }
+        }
+        return receivers;
+    }
+
+    private void deregister(SimDriver driver) {
+        int i = driver.activeSlot;
+        SimDriver last = active[--activeCount];
+        active[i] = last;
+        last.activeSlot = i;
+        active[activeCount] = null;
+        if (candidates != null) {
+            candidates.deregister(driver.aid);
+        }
+    }
+
+    private class SimDriver implements Driver {
+        final AID aid;
+        final MapModel.Intention intention;
+        final MapModel.Route initialRoute;
+        final Set<AID> blackList;
+        Plan currPlan;
+        Plan prevPlan;
+        SimDriver waitingFor;
+        Set<AID> carried;
+        long tickToken;
+        long backoffMs = DriverAgent.SEARCH_MIN_BACKOFF_MS;
+        boolean triggered;
+        boolean searchRunning;
+        boolean isDone;
+        int attemptCnt;
+        int activeSlot;
+
+        SimDriver(int index, MapModel.Intention intention) {
+            this.aid = new AID("Driver" + (index + 1) + "@simulation", AID.ISGUID);
+            this.intention = intention;
+            this.initialRoute = map.getRoute(intention.from, intention.to);
+            this.blackList = new HashSet<>();
+            this.currPlan = new Plan(initialRoute, new ArrayList<>(), new HashMap<>(), 0);
+            this.activeSlot = index;
+        }
+
+        void scheduleTick(long delay) {
+            ++tickToken;
+            schedule(delay, EventType.TICK, this);
+        }
+
+        void onTick() {
+            if (!adaptiveScheduling) {
+                scheduleTick(nextTickDelay());
+            }
+            if (searchRunning || waitingFor != null) {
+                return;
+            }
+            if (attemptCnt == DriverAgent.MAX_ATTEMPT_COUNT) {
+                acceptCurrentRoute();
+                return;
+            }
+            runSearch(this);
+        }
+
+        // something this driver's options depend on changed, so it searches again right away
+        void trigger() {
+            if (!adaptiveScheduling || isDone) {
+                return;
+            }
+            triggered = true;
+            backoffMs = DriverAgent.SEARCH_MIN_BACKOFF_MS;
+            if (waitingFor == null) {
+                scheduleTick(MESSAGE_LATENCY_MS);
+            }
+        }
+
+        Quote handleCfp(SimDriver sender, List<PassengerPlan> riders) {
+            // a driver waiting for confirmation is blocked and lets the cfp time out
+            if (isDone || waitingFor != null) {
+                return null;
+            }
+            Quote quote = Quote.priceBundle(
+                    map, planner, intention, currPlan,
+                    sender.aid, sender.intention, riders, DriverAgent.DRIVER_PREMIUM
+            );
+            if (quote == null || !quote.isProfitable(currPlan)) {
+                return null;
+            }
+            blackList.add(sender.aid);
+            return quote;
+        }
+
+        @Override
+        public double getInitialRouteCost() {
+            return initialRoute.getCost();
+        }
+
+        @Override
+        public double getCurrentIncome() {
+            return currPlan.getIncome();
+        }
+
+        @Override
+        public void acceptCurrentRoute() {
+            finish();
+            ++result.drivers;
+            result.totalCost += currPlan.getRoute().getCost();
+
+            for (AID passenger: currPlan.getPassengers()) {
+                ++result.messages;
+                SimDriver rider = byAid.get(passenger);
+                rider.quitDriving(rider.carried);
+            }
+        }
+
+        @Override
+        public void quitDriving(Set<AID> carried) {
+            finish();
+            ++result.passengers;
+
+            for (AID passenger: currPlan.getPassengers()) {
+                ++result.messages;
+                SimDriver rider = byAid.get(passenger);
+                if (carried.contains(passenger)) {
+                    rider.quitDriving(rider.carried);
+                } else {
+                    rider.waitingFor = null;
+                    if (candidates != null) {
+                        candidates.register(rider.aid, rider.intention);
+                    }
+                    schedule(MESSAGE_LATENCY_MS, EventType.SEARCH, rider);
+                }
+            }
+        }
+
+        @Override
+        public Plan getCurrentPlan() {
+            return currPlan;
+        }
+
+        @Override
+        public void rememberCurrentRoute() {
+            prevPlan = currPlan;
+        }
+
+        @Override
+        public boolean hasCurrentRouteChanged() {
+            return prevPlan == currPlan;
+        }
+
+        @Override
+        public void incAttemptCount() {
+            ++attemptCnt;
+        }
+
+        @Override
+        public boolean inBlackList(AID agent) {
+            return blackList.contains(agent);
+        }
+
+        @Override
+        public void addToBlackList(AID agent) {
+            blackList.add(agent);
+        }
+
+        private void finish() {
+            isDone = true;
+            searchRunning = false;
+            waitingFor = null;
+            deregister(this);
+        }
+    }
+
+    public static void main(String[] args) {
+        int driverCount = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42;
+        boolean indexed = args.length <= 2 || !args[2].equals("random");
+        boolean adaptive = args.length <= 3 || !args[3].equals("fixed");
+        // -Dcarpool.flex=<minutes> gives the commutes morning-peak time windows
+        double flex = Double.parseDouble(System.getProperty("carpool.flex", "0"));
+
+        String mapFile = System.getProperty("carpool.map");
+        MapModel map = null;
+        if (mapFile == null) {
+            map = MapModel.generate(104, 4, 10);
+        } else {
+            try {
+                map = MapFile.load(new File(mapFile));
+            } catch (IOException e) {
+                System.out.println("Error: " + e);
+                System.exit(1);
+            }
+        }
+        if (!(map.getRoutingEngine() instanceof DistanceOracle)) {
+            if (map.getNodes().size() <= ORACLE_MAX_NODES) {
+                map.buildDistanceOracle();
+            } else {
+                map.enableLegCache(LEG_CACHE_CAPACITY);
+            }
+        }
+
+        Simulation simulation = new Simulation(
+                map, map.generateCommutes(driverCount, seed, flex),
+                DriverAgent.CAPACITY, DriverSearchBehaviour.MAX_CFP_COUNT, seed
+        );
+        if (indexed) {
+            simulation.useCandidateIndex();
+        }
+        if (!adaptive) {
+            simulation.useFixedPeriodScheduling();
+        }
+        simulation.run().print();
+    }
+}
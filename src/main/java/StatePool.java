@@ -0,0 +1,40 @@
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+// lock-free pool of search states: the pool grows to the number of concurrent queries, not agent threads
+class StatePool<T> {
+
+    private static final int SLOT_COUNT = 64;
+
+    private final AtomicReferenceArray<T> slots;
+    private final Supplier<T> factory;
+
+    StatePool(Supplier<T> factory) {
+        this.slots = new AtomicReferenceArray<>(SLOT_COUNT);
+        this.factory = factory;
+    }
+
+    T acquire() {
+        int start = (int) (Thread.currentThread().getId() % SLOT_COUNT);
+        for (int i = 0; i < SLOT_COUNT; ++i) {
+            int slot = (start + i) % SLOT_COUNT;
+            if (slots.get(slot) != null) {
+                T state = slots.getAndSet(slot, null);
+                if (state != null) {
+                    return state;
+                }
+            }
+        }
+        return factory.get();
+    }
+
+    void release(T state) {
+        int start = (int) (Thread.currentThread().getId() % SLOT_COUNT);
+        for (int i = 0; i < SLOT_COUNT; ++i) {
+            int slot = (start + i) % SLOT_COUNT;
+            if (slots.get(slot) == null && slots.compareAndSet(slot, null, state)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+// When a stop may be served, in minutes after midnight; a vehicle reaching the stop early waits for the window
+// to open, one reaching it late cannot serve it
+class TimeWindow {
+
+    public static final TimeWindow ANY = new TimeWindow(0, Double.MAX_VALUE);
+
+    public final double earliest;
+    public final double latest;
+
+    public TimeWindow(double earliest, double latest) {
+        if (!(earliest >= 0) || !(latest >= earliest)) {
+            throw new IllegalArgumentException("Bad time window [" + earliest + ", " + latest + "]");
+        }
+        this.earliest = earliest;
+        this.latest = latest;
+    }
+
+    public boolean isBounded() {
+        return earliest > 0 || latest < Double.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return isBounded() ? String.format("[%.1f, %.1f]", earliest, latest) : "any";
+    }
+}
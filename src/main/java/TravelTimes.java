@@ -0,0 +1,71 @@
+import java.util.Arrays;
+
+// Driving time over a distance by time of day: a free-flow speed slowed down by a congestion factor for every
+// hour. Legs are driven through the hours they span at each hour's speed, so leaving later never means arriving
+// earlier, and the fastest hour gives a lower bound planners can prune with
+class TravelTimes {
+
+    private static final int HOURS = 24;
+
+    public static final TravelTimes FREE_FLOW = new TravelTimes(40, new double[] { 1 });
+
+    private final double freeFlowKmh;
+    // km per minute in every hour of the day
+    private final double[] speeds = new double[HOURS];
+    private final double maxSpeed;
+
+    // congestion factors cycle through the day, so a single factor means the same speed around the clock
+    public TravelTimes(double freeFlowKmh, double[] congestion) {
+        this.freeFlowKmh = freeFlowKmh;
+        double max = 0;
+        for (int h = 0; h < HOURS; ++h) {
+            double factor = congestion[h % congestion.length];
+            if (!(factor >= 1)) {
+                throw new IllegalArgumentException("Congestion factor below 1: " + factor);
+            }
+            speeds[h] = freeFlowKmh / 60 / factor;
+            max = Math.max(max, speeds[h]);
+        }
+        this.maxSpeed = max;
+    }
+
+    // morning and evening rush hours with roads at their slowest at 8:00 and 17:00
+    public static TravelTimes commuterPeaks() {
+        double[] congestion = new double[HOURS];
+        Arrays.fill(congestion, 1.0);
+        congestion[7] = 1.6;
+        congestion[8] = 2.0;
+        congestion[9] = 1.4;
+        congestion[16] = 1.5;
+        congestion[17] = 1.9;
+        congestion[18] = 1.4;
+        return new TravelTimes(40, congestion);
+    }
+
+    public double getFreeFlowKmh() {
+        return freeFlowKmh;
+    }
+
+    public double getArrival(double departure, double km) {
+        if (km == Double.MAX_VALUE || departure == Double.MAX_VALUE) {
+            return Double.MAX_VALUE;
+        }
+        double time = departure;
+        double remaining = km;
+        while (true) {
+            double hourEnd = 60 * (Math.floor(time / 60) + 1);
+            double speed = speeds[(int) (time / 60) % HOURS];
+            double reach = speed * (hourEnd - time);
+            if (reach >= remaining) {
+                return time + remaining / speed;
+            }
+            remaining -= reach;
+            time = hourEnd;
+        }
+    }
+
+    // no departure time gets over the distance faster
+    public double getMinMinutes(double km) {
+        return km == Double.MAX_VALUE ? Double.MAX_VALUE : km / maxSpeed;
+    }
+}
@@ -0,0 +1,69 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class AsyncAppenderTest {
+
+    private static final int THREADS = 4;
+    private static final int RECORDS = 5000;
+
+    @Test
+    public void fullRingDropsOnlyDebugAndTrace() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        AsyncAppender appender = new AsyncAppender(8, new PrintStream(bytes, false), null);
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; ++t) {
+            int id = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < RECORDS; ++i) {
+                    appender.append(Log.Level.INFO, "info %d %d\n", new Object[] { id, i });
+                    appender.append(Log.Level.DEBUG, "debug %d %d\n", new Object[] { id, i });
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread: threads) {
+            thread.join();
+        }
+        appender.close();
+
+        long infos = 0;
+        long debugs = 0;
+        for (String line: bytes.toString().split("\n")) {
+            if (line.startsWith("info ")) {
+                ++infos;
+            } else if (line.startsWith("debug ")) {
+                ++debugs;
+            }
+        }
+        assertEquals(THREADS * RECORDS, infos);
+        assertEquals(THREADS * RECORDS, debugs + appender.getDroppedCount());
+    }
+
+    @Test
+    public void idleWriterSleepsUntilAppend() throws Exception {
+        Set<Thread> before = Thread.getAllStackTraces().keySet();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        AsyncAppender appender = new AsyncAppender(16, new PrintStream(bytes, false), null);
+        Thread writer = null;
+        for (Thread thread: Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("log-writer") && !before.contains(thread)) {
+                writer = thread;
+            }
+        }
+        for (int i = 0; i < 100 && writer.getState() != Thread.State.WAITING; ++i) {
+            Thread.sleep(10);
+        }
+        assertEquals(Thread.State.WAITING, writer.getState());
+
+        appender.append(Log.Level.INFO, "wakes up\n", new Object[0]);
+        appender.flush();
+        assertTrue(bytes.toString().contains("wakes up"));
+        appender.close();
+    }
+}
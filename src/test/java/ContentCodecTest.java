@@ -0,0 +1,187 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.*;
+
+import jade.core.AID;
+import jade.lang.acl.ACLMessage;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class ContentCodecTest {
+
+    private static final ContentCodec[] CODECS = { BinaryCodec.INSTANCE, JsonCodec.INSTANCE };
+
+    private final MapModel map = MapModel.generate(104, 4, 10, 1);
+
+    @Test
+    public void cfpRoundTrip() {
+        MapModel.Intention intention = new MapModel.Intention(
+                map.getNode(3), map.getNode(77), new TimeWindow(480, 495), new TimeWindow(0, 540)
+        );
+        List<PassengerPlan> riders = Arrays.asList(
+                new PassengerPlan(aid("a"), map.getNode(5), map.getNode(9), 0),
+                new PassengerPlan(
+                        aid("b"), map.getNode(90), map.getNode(0), 0, new TimeWindow(470, 480), TimeWindow.ANY
+                )
+        );
+        for (ContentCodec codec: CODECS) {
+            ACLMessage msg = new ACLMessage(ACLMessage.CFP);
+            codec.writeCfp(msg, intention, riders);
+            ContentCodec.Cfp cfp = ContentCodec.forMessage(msg).readCfp(msg, map);
+
+            assertEquals(codec.getLanguage(), msg.getLanguage());
+            assertIntention(intention, cfp.intention);
+            assertEquals(riders.size(), cfp.riders.size());
+            for (int i = 0; i < riders.size(); ++i) {
+                PassengerPlan expected = riders.get(i);
+                PassengerPlan actual = cfp.riders.get(i);
+                assertEquals(expected.aid, actual.aid);
+                assertIntention(
+                        new MapModel.Intention(expected.from, expected.to, expected.departure, expected.arrival),
+                        new MapModel.Intention(actual.from, actual.to, actual.departure, actual.arrival)
+                );
+            }
+        }
+    }
+
+    @Test
+    public void proposalRoundTrip() {
+        for (ContentCodec codec: CODECS) {
+            ACLMessage msg = new ACLMessage(ACLMessage.PROPOSE);
+            codec.writeProposal(msg, 12.25);
+            assertEquals(12.25, ContentCodec.forMessage(msg).readProposal(msg), 0);
+        }
+    }
+
+    @Test
+    public void reportRoundTrip() {
+        ContentCodec.Report report = new ContentCodec.Report(
+                ContentCodec.Report.DRIVER, 9, 14, -3.5,
+                Arrays.asList(map.getNode(40), map.getNode(2), map.getNode(41)),
+                Collections.singletonList(new PassengerPlan(aid("a"), map.getNode(2), map.getNode(41), 4.5))
+        );
+        for (ContentCodec codec: CODECS) {
+            ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+            codec.writeReport(msg, report);
+            ContentCodec.Report read = ContentCodec.forMessage(msg).readReport(msg, map);
+            assertEquals(ContentCodec.Report.DRIVER, read.senderType);
+            assertEquals(9, read.initialCost, 0);
+            assertEquals(14, read.cost, 0);
+            assertEquals(-3.5, read.income, 0);
+            assertEquals(report.route, read.route);
+            assertEquals(1, read.passengers.size());
+            assertEquals(aid("a"), read.passengers.get(0).aid);
+            assertEquals(4.5, read.passengers.get(0).payment, 0);
+
+            msg = new ACLMessage(ACLMessage.INFORM);
+            codec.writeReport(msg, ContentCodec.Report.passenger(7));
+            read = ContentCodec.forMessage(msg).readReport(msg, map);
+            assertEquals(ContentCodec.Report.PASSENGER, read.senderType);
+            assertEquals(7, read.initialCost, 0);
+        }
+    }
+
+    @Test
+    public void truncatedBinaryContentIsRejected() {
+        ACLMessage cfp = new ACLMessage(ACLMessage.CFP);
+        BinaryCodec.INSTANCE.writeCfp(
+                cfp,
+                new MapModel.Intention(map.getNode(3), map.getNode(77), new TimeWindow(480, 495), TimeWindow.ANY),
+                Collections.singletonList(new PassengerPlan(aid("a"), map.getNode(5), map.getNode(9), 0))
+        );
+        ACLMessage report = new ACLMessage(ACLMessage.INFORM);
+        BinaryCodec.INSTANCE.writeReport(report, new ContentCodec.Report(
+                ContentCodec.Report.DRIVER, 9, 14, -3.5, Arrays.asList(map.getNode(40), map.getNode(41)),
+                Collections.singletonList(new PassengerPlan(aid("a"), map.getNode(40), map.getNode(41), 4.5))
+        ));
+        ACLMessage proposal = new ACLMessage(ACLMessage.PROPOSE);
+        BinaryCodec.INSTANCE.writeProposal(proposal, 12.25);
+
+        byte[] content = cfp.getByteSequenceContent();
+        for (int length = 0; length < content.length; ++length) {
+            ACLMessage msg = truncated(cfp, length);
+            assertRejected("cfp cut at " + length, () -> BinaryCodec.INSTANCE.readCfp(msg, map));
+        }
+        content = report.getByteSequenceContent();
+        for (int length = 0; length < content.length; ++length) {
+            ACLMessage msg = truncated(report, length);
+            assertRejected("report cut at " + length, () -> BinaryCodec.INSTANCE.readReport(msg, map));
+        }
+        content = proposal.getByteSequenceContent();
+        for (int length = 0; length < content.length; ++length) {
+            ACLMessage msg = truncated(proposal, length);
+            assertRejected("proposal cut at " + length, () -> BinaryCodec.INSTANCE.readProposal(msg));
+        }
+    }
+
+    @Test
+    public void malformedJsonContentIsRejected() {
+        assertRejected("missing content", () -> JsonCodec.INSTANCE.readCfp(json(null), map));
+        assertRejected("not json", () -> JsonCodec.INSTANCE.readCfp(json("{\"from\": 1,"), map));
+        assertRejected("missing key", () -> JsonCodec.INSTANCE.readCfp(json("{\"from\": 1}"), map));
+        assertRejected("bad window", () -> JsonCodec.INSTANCE.readCfp(
+                json("{\"from\": 1, \"to\": 2, \"departure\": [480]}"), map
+        ));
+        assertRejected("rider without name", () -> JsonCodec.INSTANCE.readCfp(
+                json("{\"from\": 1, \"to\": 2, \"riders\": [{\"from\": 3, \"to\": 4}]}"), map
+        ));
+        assertRejected("missing payment", () -> JsonCodec.INSTANCE.readProposal(json("{}")));
+        assertRejected("driver report without route", () -> JsonCodec.INSTANCE.readReport(
+                json(new JSONObject().put("sender-type", "driver").put("initial-cost", 1).toString()), map
+        ));
+    }
+
+    @Test
+    public void unknownNodesAreRejected() {
+        MapModel.Node outside = new MapModel.Node(500, 0, map.getNode(0).districtType);
+        for (ContentCodec codec: CODECS) {
+            ACLMessage msg = new ACLMessage(ACLMessage.CFP);
+            codec.writeCfp(msg, new MapModel.Intention(map.getNode(0), outside), Collections.emptyList());
+            assertRejected(codec.getLanguage(), () -> ContentCodec.forMessage(msg).readCfp(msg, map));
+        }
+    }
+
+    @Test
+    public void contentOfAnotherKindIsRejected() {
+        ACLMessage msg = new ACLMessage(ACLMessage.PROPOSE);
+        BinaryCodec.INSTANCE.writeProposal(msg, 1);
+        assertRejected("proposal read as cfp", () -> BinaryCodec.INSTANCE.readCfp(msg, map));
+    }
+
+    private static AID aid(String name) {
+        return new AID(name + "@test", AID.ISGUID);
+    }
+
+    private static ACLMessage truncated(ACLMessage msg, int length) {
+        ACLMessage copy = new ACLMessage(msg.getPerformative());
+        copy.setLanguage(msg.getLanguage());
+        copy.setByteSequenceContent(Arrays.copyOf(msg.getByteSequenceContent(), length));
+        return copy;
+    }
+
+    private static ACLMessage json(String content) {
+        ACLMessage msg = new ACLMessage(ACLMessage.CFP);
+        msg.setLanguage(JsonCodec.LANGUAGE);
+        msg.setContent(content);
+        return msg;
+    }
+
+    private static void assertIntention(MapModel.Intention expected, MapModel.Intention actual) {
+        assertEquals(expected.from, actual.from);
+        assertEquals(expected.to, actual.to);
+        assertEquals(expected.departure.earliest, actual.departure.earliest, 0);
+        assertEquals(expected.departure.latest, actual.departure.latest, 0);
+        assertEquals(expected.arrival.earliest, actual.arrival.earliest, 0);
+        assertEquals(expected.arrival.latest, actual.arrival.latest, 0);
+    }
+
+    private static void assertRejected(String message, Runnable read) {
+        try {
+            read.run();
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        fail(message + ": malformed content was accepted");
+    }
+}
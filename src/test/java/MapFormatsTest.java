@@ -0,0 +1,244 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MapFormatsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void mapFileRoundTrip() throws Exception {
+        MapModel map = MapModel.generate(104, 4, 10, 21);
+        DistanceOracle oracle = map.buildDistanceOracle();
+
+        File withOracle = folder.newFile("oracle.map");
+        MapFile.write(map, oracle, withOracle);
+        MapModel loaded = MapFile.load(withOracle);
+        assertSameGraph(map.getCompactGraph(), loaded.getCompactGraph());
+        assertTrue(loaded.getRoutingEngine() instanceof DistanceOracle);
+        for (MapModel.Node u: map.getNodes()) {
+            for (MapModel.Node v: map.getNodes()) {
+                assertEquals(
+                        map.getDistance(u, v),
+                        loaded.getDistance(loaded.getNodes().get(u.id), loaded.getNodes().get(v.id)),
+                        0
+                );
+            }
+        }
+
+        File plain = folder.newFile("plain.map");
+        MapFile.write(map, null, plain);
+        loaded = MapFile.load(plain);
+        assertSameGraph(map.getCompactGraph(), loaded.getCompactGraph());
+        assertTrue(loaded.getRoutingEngine() instanceof DijkstraEngine);
+    }
+
+    @Test
+    public void corruptMapFilesAreRejected() throws Exception {
+        MapModel map = MapModel.generate(104, 4, 10, 21);
+        File file = folder.newFile("map.map");
+        MapFile.write(map, null, file);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+
+        assertRejected(Arrays.copyOf(bytes, bytes.length / 2));
+        assertRejected(Arrays.copyOf(bytes, 12));
+
+        byte[] corrupt = bytes.clone();
+        corrupt[0] ^= 1;
+        assertRejected(corrupt);
+
+        // the first arc of the targets section leads past the last node
+        corrupt = bytes.clone();
+        ByteBuffer.wrap(corrupt).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt((int) sectionOffset(bytes, MapFile.TARGETS), map.getNodes().size());
+        assertRejected(corrupt);
+
+        // a district type ordinal past the known types
+        corrupt = bytes.clone();
+        ByteBuffer.wrap(corrupt).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt((int) sectionOffset(bytes, MapFile.NODES), 0x7f << 24);
+        assertRejected(corrupt);
+
+        // a negative node count
+        corrupt = bytes.clone();
+        ByteBuffer.wrap(corrupt).order(ByteOrder.LITTLE_ENDIAN).putInt(2 * Integer.BYTES, -1);
+        assertRejected(corrupt);
+    }
+
+    @Test
+    public void exportedDotReadsBack() throws Exception {
+        MapModel map = MapModel.generate(104, 4, 10, 42);
+        File file = folder.newFile("map.dot");
+        map.exportToDot(file);
+        MapModel read = DotReader.read(file);
+
+        assertEquals(map.getNodes().size(), read.getNodes().size());
+        for (MapModel.Node node: map.getNodes()) {
+            MapModel.Node copy = read.getNodes().get(node.id);
+            assertEquals(node.districtId, copy.districtId);
+            assertEquals(node.districtType, copy.districtType);
+        }
+        CompactGraph expected = map.getCompactGraph();
+        CompactGraph actual = read.getCompactGraph();
+        assertEquals(expected.edgeCount(), actual.edgeCount());
+        for (int u = 0; u < expected.size(); ++u) {
+            assertEquals(neighbours(expected, u), neighbours(actual, u));
+        }
+        for (MapModel.Node u: map.getNodes()) {
+            for (MapModel.Node v: map.getNodes()) {
+                assertEquals(
+                        map.getDistance(u, v),
+                        read.getDistance(read.getNodes().get(u.id), read.getNodes().get(v.id)),
+                        0
+                );
+            }
+        }
+    }
+
+    @Test
+    public void badDotInputIsRejected() throws Exception {
+        assertDotRejected("graph g {\n a -- b;\n b -> c;\n}\n");
+        assertDotRejected("digraph g {\n a -> b;\n}\n");
+        assertDotRejected("graph g {\n a -- b [weight=-1];\n}\n");
+        assertDotRejected("graph g {\n a -- b [weight=NaN];\n}\n");
+        assertDotRejected("graph g {\n a -- b [weight=far];\n}\n");
+
+        MapModel map = DotReader.read(write("ok.dot", "graph g {\n a -- b -- c [weight=2.5];\n a -- c;\n}\n"));
+        List<MapModel.Node> nodes = map.getNodes();
+        assertEquals(3, nodes.size());
+        assertEquals(1, map.getDistance(nodes.get(0), nodes.get(2)), 0);
+        assertEquals(2.5, map.getDistance(nodes.get(0), nodes.get(1)), 0);
+    }
+
+    // 1-2-3-4-5 is the largest part; 6-7 is dropped. 1-2 has parallel roads of which 3 is the shortest, the
+    // -0 road must neither corrupt the sort keys nor stay negative, and self-loops are ignored
+    private static final String[][] ROADS = {
+            { "1", "2", "5" }, { "2", "1", "3" }, { "1", "2", "4" },
+            { "2", "3", "-0" }, { "3", "2", "7" },
+            { "3", "4", "2.5" }, { "4", "5", "1" }, { "5", "5", "9" }, { "1", "5", "10" },
+            { "6", "7", "1" }
+    };
+
+    @Test
+    public void dimacsImportCleansTheNetwork() throws Exception {
+        StringBuilder text = new StringBuilder("c test network\np sp 7 " + ROADS.length + "\n");
+        for (String[] road: ROADS) {
+            text.append("a ").append(road[0]).append(' ').append(road[1]).append(' ').append(road[2]).append('\n');
+        }
+        File file = write("roads.gr", text.toString());
+        assertEquals(RoadNetworkImporter.Format.DIMACS, RoadNetworkImporter.detectFormat(file));
+        assertImported(new RoadNetworkImporter(file, RoadNetworkImporter.Format.DIMACS, 1).read(0.2, 2, 21), 1);
+    }
+
+    @Test
+    public void csvImportCleansTheNetwork() throws Exception {
+        // ids from 0 here, a header and an extra column
+        StringBuilder text = new StringBuilder("from,to,length,name\n");
+        for (String[] road: ROADS) {
+            text.append(Integer.parseInt(road[0]) - 1).append(',').append(Integer.parseInt(road[1]) - 1)
+                    .append(',').append(road[2]).append(",road\n");
+        }
+        File file = write("roads.csv", text.toString());
+        assertImported(new RoadNetworkImporter(file, RoadNetworkImporter.Format.CSV, 1000).read(0.2, 2, 21), 1000);
+    }
+
+    private static void assertImported(MapModel map, double scale) throws Exception {
+        CompactGraph graph = map.getCompactGraph();
+        assertEquals(5, graph.size());
+        // 1-2, 2-3, 3-4, 4-5 and 1-5 once each
+        assertEquals(5, graph.edgeCount());
+        for (int u = 0; u < graph.size(); ++u) {
+            for (int e = graph.firstEdge(u); e < graph.endEdge(u); ++e) {
+                assertTrue(graph.target(e) >= 0 && graph.target(e) < graph.size());
+                assertEquals(0, Float.floatToIntBits(graph.weight(e)) >>> 31);
+            }
+        }
+        assertEquals(3 * scale, graph.weight(graph.findEdge(0, 1)), 0);
+        assertEquals(0, graph.weight(graph.findEdge(1, 2)), 0);
+        assertEquals(2.5 * scale, graph.weight(graph.findEdge(2, 3)), 0);
+        assertEquals(6.5 * scale, map.getDistance(map.getNodes().get(0), map.getNodes().get(4)), 1e-9);
+
+        // and the imported map survives a map file
+        File file = File.createTempFile("imported", ".map");
+        try {
+            MapFile.write(map, null, file);
+            assertSameGraph(graph, MapFile.load(file).getCompactGraph());
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void assertSameGraph(CompactGraph expected, CompactGraph actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.edgeCount(), actual.edgeCount());
+        for (int u = 0; u < expected.size(); ++u) {
+            assertEquals(expected.getNode(u).districtId, actual.getNode(u).districtId);
+            assertEquals(expected.getNode(u).districtType, actual.getNode(u).districtType);
+            assertEquals(expected.firstEdge(u), actual.firstEdge(u));
+            assertEquals(expected.endEdge(u), actual.endEdge(u));
+            for (int e = expected.firstEdge(u); e < expected.endEdge(u); ++e) {
+                assertEquals(expected.target(e), actual.target(e));
+                assertEquals(expected.weight(e), actual.weight(e), 0);
+            }
+        }
+    }
+
+    private static Map<Integer, Float> neighbours(CompactGraph graph, int u) {
+        Map<Integer, Float> neighbours = new HashMap<>();
+        for (int e = graph.firstEdge(u); e < graph.endEdge(u); ++e) {
+            neighbours.put(graph.target(e), graph.weight(e));
+        }
+        return neighbours;
+    }
+
+    private static long sectionOffset(byte[] bytes, int kind) {
+        ByteBuffer header = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        int sectionCount = header.getInt(4 * Integer.BYTES);
+        for (int i = 0; i < sectionCount; ++i) {
+            int entry = 5 * Integer.BYTES + i * (2 * Integer.BYTES + 2 * Long.BYTES);
+            if (header.getInt(entry) == kind) {
+                return header.getLong(entry + 2 * Integer.BYTES);
+            }
+        }
+        throw new AssertionError("No section " + kind);
+    }
+
+    private void assertRejected(byte[] bytes) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), bytes);
+        try {
+            MapFile.load(file);
+        } catch (IOException e) {
+            return;
+        }
+        fail("corrupt map file was loaded");
+    }
+
+    private void assertDotRejected(String text) throws IOException {
+        File file = write("bad" + text.hashCode() + ".dot", text);
+        try {
+            DotReader.read(file);
+        } catch (IOException e) {
+            return;
+        }
+        fail("bad DOT input was read: " + text);
+    }
+
+    private File write(String name, String text) throws IOException {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,100 @@
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.*;
+
+import jade.core.AID;
+import org.junit.Test;
+
+public class PlannerTest {
+
+    private static final long[] SEEDS = { 1, 21, 42 };
+    private static final int QUOTES = 500;
+    private static final int CAPACITY = 3;
+
+    @Test
+    public void insertionNeverCostsMoreThanGreedy() {
+        for (long seed: SEEDS) {
+            MapModel map = MapModel.generate(104, 4, 10, seed);
+            map.buildDistanceOracle();
+            List<MapModel.Node> nodes = map.getNodes();
+            RoutePlanner insertion = new InsertionPlanner(map, CAPACITY);
+            RoutePlanner greedy = new GreedyPlanner(map, CAPACITY);
+            Random random = new Random(seed);
+
+            for (int q = 0; q < QUOTES; ++q) {
+                MapModel.Intention vehicle = new MapModel.Intention(pick(nodes, random), pick(nodes, random));
+                // current plans of up to four passengers, grown by the planner under test
+                List<Destination> stops = Collections.emptyList();
+                int passengers = random.nextInt(5);
+                for (int k = 0; k <= passengers; ++k) {
+                    AID aid = new AID("p" + k + "@test", AID.ISGUID);
+                    Destination source = new Destination(aid, Destination.Tag.SOURCE, pick(nodes, random));
+                    Destination sink = new Destination(aid, Destination.Tag.SINK, pick(nodes, random));
+
+                    List<Destination> inserted = insertion.plan(vehicle, stops, source, sink);
+                    List<Destination> rebuilt = greedy.plan(vehicle, stops, source, sink);
+                    if (rebuilt != null) {
+                        assertNotNull("seed " + seed + ", quote " + q, inserted);
+                        assertTrue(
+                                "seed " + seed + ", quote " + q,
+                                getCost(map, vehicle, inserted) <= getCost(map, vehicle, rebuilt) + 1e-9
+                        );
+                    }
+                    if (inserted == null) {
+                        break;
+                    }
+                    stops = inserted;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void exactNeverCostsMoreThanInsertion() {
+        for (long seed: SEEDS) {
+            MapModel map = MapModel.generate(104, 4, 10, seed);
+            map.buildDistanceOracle();
+            List<MapModel.Node> nodes = map.getNodes();
+            RoutePlanner insertion = new InsertionPlanner(map, CAPACITY);
+            // one planner for every quote, so its search tables grow with the plans it is given
+            ExactPlanner exact = new ExactPlanner(map, CAPACITY, 8, Long.MAX_VALUE, insertion);
+            Random random = new Random(seed);
+
+            for (int q = 0; q < QUOTES / 5; ++q) {
+                MapModel.Intention vehicle = new MapModel.Intention(pick(nodes, random), pick(nodes, random));
+                List<Destination> stops = Collections.emptyList();
+                for (int k = 0; k < 4; ++k) {
+                    AID aid = new AID("p" + k + "@test", AID.ISGUID);
+                    Destination source = new Destination(aid, Destination.Tag.SOURCE, pick(nodes, random));
+                    Destination sink = new Destination(aid, Destination.Tag.SINK, pick(nodes, random));
+
+                    List<Destination> inserted = insertion.plan(vehicle, stops, source, sink);
+                    List<Destination> planned = exact.plan(vehicle, stops, source, sink);
+                    assertFalse(exact.hasTimedOut());
+                    assertNotNull("seed " + seed + ", quote " + q, planned);
+                    assertTrue(
+                            "seed " + seed + ", quote " + q,
+                            getCost(map, vehicle, planned) <= getCost(map, vehicle, inserted) + 1e-9
+                    );
+                    stops = planned;
+                }
+            }
+        }
+    }
+
+    static MapModel.Node pick(List<MapModel.Node> nodes, Random random) {
+        return nodes.get(random.nextInt(nodes.size()));
+    }
+
+    static double getCost(MapModel map, MapModel.Intention vehicle, List<Destination> sequence) {
+        double cost = 0;
+        MapModel.Node prev = vehicle.from;
+        for (Destination destination: sequence) {
+            cost += map.getDistance(prev, destination.node);
+            prev = destination.node;
+        }
+        return cost + map.getDistance(prev, vehicle.to);
+    }
+}
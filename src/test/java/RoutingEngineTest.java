@@ -0,0 +1,69 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RoutingEngineTest {
+
+    private static final long[] SEEDS = { 1, 21, 42 };
+    private static final int SAMPLES = 1000;
+
+    @Test
+    public void distanceOracleMatchesDijkstra() {
+        for (long seed: SEEDS) {
+            MapModel map = MapModel.generate(104, 4, 10, seed);
+            DistanceOracle oracle = map.buildDistanceOracle();
+            assertEquals("seed " + seed, 0, map.getReferenceEngine().countMismatches(oracle, SAMPLES, seed));
+        }
+    }
+
+    // float weights including zeros, parallel edges with different weights, self-loops and unreachable nodes,
+    // as imported road networks and DOT files can have
+    @Test
+    public void enginesMatchDijkstraOnWeightedGraphs() {
+        for (long seed: SEEDS) {
+            Random random = new Random(seed);
+            for (int round = 0; round < 10; ++round) {
+                int n = 20 + random.nextInt(200);
+                int edgeCount = n + random.nextInt(2 * n);
+                MapModel.Node[] nodes = new MapModel.Node[n];
+                for (int i = 0; i < n; ++i) {
+                    nodes[i] = new MapModel.Node(i, 0, MapModel.DistrictType.values()[0]);
+                }
+                int[] from = new int[edgeCount];
+                int[] to = new int[edgeCount];
+                float[] weights = new float[edgeCount];
+                for (int e = 0; e < edgeCount; ++e) {
+                    int kind = random.nextInt(20);
+                    if (kind == 0 && e > 0) {
+                        int parallel = random.nextInt(e);
+                        from[e] = to[parallel];
+                        to[e] = from[parallel];
+                    } else {
+                        // the last few nodes get no edges and stay unreachable
+                        from[e] = random.nextInt(n - 3);
+                        to[e] = kind == 1 ? from[e] : random.nextInt(n - 3);
+                    }
+                    weights[e] = random.nextInt(5) == 0 ? 0 : random.nextFloat() * 10;
+                }
+                MapModel map = MapModel.fromCompactGraph(CompactGraph.fromEdges(nodes, from, to, weights, edgeCount));
+
+                String message = "seed " + seed + ", round " + round;
+                ContractionHierarchy hierarchy = map.buildContractionHierarchy();
+                assertEquals(message, 0, map.getReferenceEngine().countMismatches(hierarchy, SAMPLES, seed));
+                DistanceOracle oracle = map.buildDistanceOracle();
+                assertEquals(message, 0, map.getReferenceEngine().countMismatches(oracle, SAMPLES, seed));
+            }
+        }
+    }
+
+    @Test
+    public void contractionHierarchyMatchesDijkstra() {
+        for (long seed: SEEDS) {
+            MapModel map = MapModel.generate(1004, 4, 10, seed);
+            ContractionHierarchy hierarchy = map.buildContractionHierarchy();
+            assertEquals("seed " + seed, 0, map.getReferenceEngine().countMismatches(hierarchy, SAMPLES, seed));
+        }
+    }
+}
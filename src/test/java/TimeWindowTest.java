@@ -0,0 +1,310 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.*;
+
+import jade.core.AID;
+import org.junit.Test;
+
+public class TimeWindowTest {
+
+    private static final long[] SEEDS = { 1, 21, 42 };
+    private static final int QUOTES = 300;
+    private static final int CAPACITY = 2;
+    private static final double EPS = 1e-9;
+    // slow roads whose speed changes every hour, so most legs are driven through an hour boundary
+    private static final TravelTimes SLOW_HOURS = new TravelTimes(10, new double[] { 1, 2.5, 1.5 });
+    private static final double START = 7 * 60 + 30;
+
+    @Test
+    public void arrivalDrivesEachHourAtItsSpeed() {
+        TravelTimes times = TravelTimes.commuterPeaks();
+        // 10 minutes at 25 km/h before 8:00, the remaining 5/6 km at 20 km/h after it
+        assertEquals(482.5, times.getArrival(470, 5), EPS);
+        assertEquals(470 + 5 / (40.0 / 60), TravelTimes.FREE_FLOW.getArrival(470, 5), EPS);
+
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; ++i) {
+            double departure = random.nextDouble() * 2000;
+            double a = random.nextDouble() * 30;
+            double b = random.nextDouble() * 30;
+            double arrival = SLOW_HOURS.getArrival(departure, a + b);
+            // a leg split at any point takes as long as the whole leg
+            assertEquals(arrival, SLOW_HOURS.getArrival(SLOW_HOURS.getArrival(departure, a), b), 1e-6);
+            // leaving later never means arriving earlier, and nothing beats the fastest hour
+            assertTrue(SLOW_HOURS.getArrival(departure + random.nextDouble() * 60, a + b) >= arrival - EPS);
+            assertTrue(departure + SLOW_HOURS.getMinMinutes(a + b) <= arrival + EPS);
+        }
+    }
+
+    @Test
+    public void timedInsertionMatchesBruteForce() {
+        int feasible = 0;
+        int infeasible = 0;
+        for (long seed: SEEDS) {
+            MapModel map = createMap(seed);
+            List<MapModel.Node> nodes = map.getNodes();
+            RoutePlanner insertion = new InsertionPlanner(map, CAPACITY);
+            RoutePlanner greedy = new GreedyPlanner(map, CAPACITY);
+            Random random = new Random(seed);
+
+            for (int q = 0; q < QUOTES; ++q) {
+                MapModel.Intention vehicle = randomVehicle(nodes, random);
+                List<Destination> stops = Collections.emptyList();
+                for (int k = 0; k < 4; ++k) {
+                    Destination[] pair = randomPassenger(nodes, random, k);
+                    List<Destination> planned = insertion.plan(vehicle, stops, pair[0], pair[1]);
+
+                    // the planner returns the cheaper of the best insertion and the greedy rebuild
+                    double expected = Math.min(
+                            bestInsertion(map, vehicle, stops, pair[0], pair[1]),
+                            getCost(map, vehicle, greedy.plan(vehicle, stops, pair[0], pair[1]))
+                    );
+                    String message = "seed " + seed + ", quote " + q + ", passenger " + k;
+                    if (expected == Double.MAX_VALUE) {
+                        assertNull(message, planned);
+                        ++infeasible;
+                        continue;
+                    }
+                    assertEquals(message, expected, getCost(map, vehicle, planned), EPS);
+                    ++feasible;
+                    stops = planned;
+                }
+            }
+        }
+        // the instances must exercise both outcomes to mean anything
+        assertTrue(feasible > QUOTES && infeasible > QUOTES);
+    }
+
+    @Test
+    public void timedExactPlanMatchesBruteForce() {
+        for (long seed: SEEDS) {
+            MapModel map = createMap(seed);
+            List<MapModel.Node> nodes = map.getNodes();
+            ExactPlanner exact = new ExactPlanner(map, CAPACITY, 8, 60L * 1000 * 1000 * 1000, new InsertionPlanner(
+                    map, CAPACITY
+            ));
+            Random random = new Random(seed);
+
+            for (int q = 0; q < QUOTES / 3; ++q) {
+                MapModel.Intention vehicle = randomVehicle(nodes, random);
+                List<Destination> stops = Collections.emptyList();
+                for (int k = 0; k < 4; ++k) {
+                    Destination[] pair = randomPassenger(nodes, random, k);
+                    List<Destination> planned = exact.plan(vehicle, stops, pair[0], pair[1]);
+                    assertFalse(exact.hasTimedOut());
+
+                    List<Destination> all = new ArrayList<>(stops);
+                    all.add(pair[0]);
+                    all.add(pair[1]);
+                    double expected = bestOrder(map, vehicle, all, new ArrayList<>(), new boolean[all.size()]);
+                    String message = "seed " + seed + ", quote " + q + ", passenger " + k;
+                    if (expected == Double.MAX_VALUE) {
+                        assertNull(message, planned);
+                        continue;
+                    }
+                    assertEquals(message, expected, getCost(map, vehicle, planned), EPS);
+                    stops = planned;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void missedWindowsLeaveNoPlan() {
+        MapModel map = createMap(1);
+        List<MapModel.Node> nodes = map.getNodes();
+        MapModel.Intention vehicle = new MapModel.Intention(
+                nodes.get(0), nodes.get(50), new TimeWindow(START, START), TimeWindow.ANY
+        );
+        AID aid = new AID("late@test", AID.ISGUID);
+        Destination sink = new Destination(aid, Destination.Tag.SINK, nodes.get(60));
+        // the pick-up closes before the vehicle leaves, so no position and no order serves it
+        Destination source = new Destination(aid, Destination.Tag.SOURCE, nodes.get(30), new TimeWindow(0, START - 1));
+        for (RoutePlanner planner: planners(map)) {
+            assertNull(planner.getClass().getName(), planner.plan(vehicle, Collections.emptyList(), source, sink));
+        }
+
+        // the drop-off closes before the slowest hour lets anyone get there
+        source = new Destination(aid, Destination.Tag.SOURCE, nodes.get(30));
+        sink = new Destination(aid, Destination.Tag.SINK, nodes.get(60), new TimeWindow(
+                0, START + map.getTravelTimes().getMinMinutes(map.getDistance(nodes.get(0), nodes.get(60))) - 1
+        ));
+        for (RoutePlanner planner: planners(map)) {
+            assertNull(planner.getClass().getName(), planner.plan(vehicle, Collections.emptyList(), source, sink));
+        }
+
+        // the passenger fits, but then the vehicle misses its own arrival
+        sink = new Destination(aid, Destination.Tag.SINK, nodes.get(60));
+        vehicle = new MapModel.Intention(
+                nodes.get(0), nodes.get(50), new TimeWindow(START, START),
+                new TimeWindow(0, map.getTravelTimes().getArrival(START, map.getDistance(nodes.get(0), nodes.get(50))))
+        );
+        double detour = map.getDistance(nodes.get(0), nodes.get(30)) + map.getDistance(nodes.get(30), nodes.get(60))
+                + map.getDistance(nodes.get(60), nodes.get(50));
+        if (detour > map.getDistance(nodes.get(0), nodes.get(50))) {
+            for (RoutePlanner planner: planners(map)) {
+                assertNull(planner.getClass().getName(), planner.plan(vehicle, Collections.emptyList(), source, sink));
+            }
+        }
+    }
+
+    @Test
+    public void untimedPlansIgnoreTravelTimes() {
+        for (long seed: SEEDS) {
+            MapModel peaks = MapModel.generate(104, 4, 10, seed);
+            peaks.buildDistanceOracle();
+            MapModel slow = MapModel.generate(104, 4, 10, seed);
+            slow.buildDistanceOracle();
+            slow.setTravelTimes(SLOW_HOURS);
+
+            Simulation.Result a = new Simulation(
+                    peaks, peaks.generateCommutes(60, seed, 0), CAPACITY, DriverSearchBehaviour.MAX_CFP_COUNT, seed
+            ).run();
+            Simulation.Result b = new Simulation(
+                    slow, slow.generateCommutes(60, seed, 0), CAPACITY, DriverSearchBehaviour.MAX_CFP_COUNT, seed
+            ).run();
+            assertEquals("seed " + seed, a.totalCost, b.totalCost, 0);
+            assertEquals("seed " + seed, a.drivers, b.drivers);
+            assertEquals("seed " + seed, a.messages, b.messages);
+
+            // and without windows insertion is the plain cheapest insertion by distance
+            List<MapModel.Node> nodes = slow.getNodes();
+            RoutePlanner insertion = new InsertionPlanner(slow, CAPACITY);
+            RoutePlanner greedy = new GreedyPlanner(slow, CAPACITY);
+            Random random = new Random(seed);
+            for (int q = 0; q < QUOTES; ++q) {
+                MapModel.Intention vehicle = new MapModel.Intention(pick(nodes, random), pick(nodes, random));
+                List<Destination> stops = Collections.emptyList();
+                for (int k = 0; k < 3; ++k) {
+                    AID aid = new AID("p" + k + "@test", AID.ISGUID);
+                    Destination source = new Destination(aid, Destination.Tag.SOURCE, pick(nodes, random));
+                    Destination sink = new Destination(aid, Destination.Tag.SINK, pick(nodes, random));
+                    List<Destination> planned = insertion.plan(vehicle, stops, source, sink);
+                    double expected = Math.min(
+                            bestInsertion(slow, vehicle, stops, source, sink),
+                            getCost(slow, vehicle, greedy.plan(vehicle, stops, source, sink))
+                    );
+                    assertEquals(expected, getCost(slow, vehicle, planned), EPS);
+                    stops = planned;
+                }
+            }
+        }
+    }
+
+    private static MapModel createMap(long seed) {
+        MapModel map = MapModel.generate(104, 4, 10, seed);
+        map.buildDistanceOracle();
+        map.setTravelTimes(SLOW_HOURS);
+        return map;
+    }
+
+    private static List<RoutePlanner> planners(MapModel map) {
+        return Arrays.asList(
+                new InsertionPlanner(map, CAPACITY),
+                new GreedyPlanner(map, CAPACITY),
+                new ExactPlanner(map, CAPACITY, 8, 60L * 1000 * 1000 * 1000, new InsertionPlanner(map, CAPACITY))
+        );
+    }
+
+    private static MapModel.Intention randomVehicle(List<MapModel.Node> nodes, Random random) {
+        TimeWindow departure = new TimeWindow(START, START + random.nextInt(20));
+        TimeWindow arrival = random.nextBoolean()
+                ? TimeWindow.ANY
+                : new TimeWindow(0, START + 60 + random.nextInt(300));
+        return new MapModel.Intention(pick(nodes, random), pick(nodes, random), departure, arrival);
+    }
+
+    private static Destination[] randomPassenger(List<MapModel.Node> nodes, Random random, int k) {
+        AID aid = new AID("p" + k + "@test", AID.ISGUID);
+        double earliest = START + random.nextInt(120);
+        TimeWindow pickUp = random.nextInt(4) == 0
+                ? TimeWindow.ANY
+                : new TimeWindow(earliest, earliest + random.nextInt(90));
+        TimeWindow dropOff = random.nextInt(4) == 0
+                ? TimeWindow.ANY
+                : new TimeWindow(0, earliest + 30 + random.nextInt(240));
+        return new Destination[] {
+                new Destination(aid, Destination.Tag.SOURCE, pick(nodes, random), pickUp),
+                new Destination(aid, Destination.Tag.SINK, pick(nodes, random), dropOff)
+        };
+    }
+
+    private static MapModel.Node pick(List<MapModel.Node> nodes, Random random) {
+        return nodes.get(random.nextInt(nodes.size()));
+    }
+
+    // cheapest feasible sequence that keeps the stops in order, by trying every pick-up and drop-off position
+    private static double bestInsertion(
+            MapModel map, MapModel.Intention vehicle, List<Destination> stops, Destination source, Destination sink
+    ) {
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i <= stops.size(); ++i) {
+            for (int j = i; j <= stops.size(); ++j) {
+                List<Destination> sequence = new ArrayList<>(stops.subList(0, i));
+                sequence.add(source);
+                sequence.addAll(stops.subList(i, j));
+                sequence.add(sink);
+                sequence.addAll(stops.subList(j, stops.size()));
+                best = Math.min(best, getCost(map, vehicle, sequence));
+            }
+        }
+        return best;
+    }
+
+    // cheapest feasible order of all stops, by trying every permutation
+    private static double bestOrder(
+            MapModel map, MapModel.Intention vehicle, List<Destination> stops, List<Destination> prefix, boolean[] used
+    ) {
+        if (prefix.size() == stops.size()) {
+            return getCost(map, vehicle, prefix);
+        }
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < stops.size(); ++i) {
+            if (!used[i]) {
+                used[i] = true;
+                prefix.add(stops.get(i));
+                best = Math.min(best, bestOrder(map, vehicle, stops, prefix, used));
+                prefix.remove(prefix.size() - 1);
+                used[i] = false;
+            }
+        }
+        return best;
+    }
+
+    // cost of driving the sequence, or Double.MAX_VALUE if it breaks a window, the capacity or a pick-up order;
+    // the vehicle leaves as early as it may and waits at stops it reaches before their window opens
+    private static double getCost(MapModel map, MapModel.Intention vehicle, List<Destination> sequence) {
+        if (sequence == null) {
+            return Double.MAX_VALUE;
+        }
+        TravelTimes times = map.getTravelTimes();
+        Set<AID> onBoard = new HashSet<>();
+        double time = vehicle.departure.earliest;
+        double cost = 0;
+        MapModel.Node prev = vehicle.from;
+        for (Destination destination: sequence) {
+            double km = map.getDistance(prev, destination.node);
+            double at = times.getArrival(time, km);
+            if (at > destination.window.latest) {
+                return Double.MAX_VALUE;
+            }
+            boolean inOrder = destination.tag == Destination.Tag.SOURCE
+                    ? onBoard.add(destination.aid) && onBoard.size() <= CAPACITY
+                    : onBoard.remove(destination.aid);
+            if (!inOrder) {
+                return Double.MAX_VALUE;
+            }
+            time = Math.max(at, destination.window.earliest);
+            cost += km;
+            prev = destination.node;
+        }
+        double km = map.getDistance(prev, vehicle.to);
+        if (times.getArrival(time, km) > vehicle.arrival.latest) {
+            return Double.MAX_VALUE;
+        }
+        return cost + km;
+    }
+}